@@ -0,0 +1,164 @@
+
+/**
+ * Decides which robots have their legs posed in a tick. The race moves every
+ * robot every tick (see {@link RaceSimulation#move}), but the pose of the
+ * legs is only for show: robots at the full and box levels of detail are
+ * posed every tick, stick figures every second tick, impostors every fourth
+ * tick and robots outside the view frustum every eighth tick. Robot i is due when
+ * the tick number plus i is a multiple of its interval, so the robots of a
+ * level are spread evenly over the ticks.
+ *
+ * Posing costs at most BUDGET nanoseconds per frame. The scheduler measures
+ * the average cost of posing a robot, and when more robots are due than the
+ * rest of the budget allows, the robots of the finest levels are posed
+ * first and the rest are skipped. A skipped robot stays due until it is
+ * posed. The number of robots that were not due and that were skipped are
+ * counted per frame.
+ */
+public class AnimationScheduler {
+
+    /**
+     * Time that posing may take per frame in nanoseconds, can be changed
+     * with the system property robotrace.animbudget in microseconds.
+     */
+    public static final long BUDGET = 1000L * Integer.getInteger("robotrace.animbudget", 2000);
+
+    /**
+     * Number of ticks between the poses of a robot at every level of
+     * detail, and of a robot outside the frustum.
+     */
+    public static final int[] INTERVAL = {1, 1, 2, 4};
+    public static final int CULLED_INTERVAL = 8;
+
+    /**
+     * Priorities the due robots are posed in: the levels of detail and
+     * outside the frustum.
+     */
+    private static final int CULLED = RobotLod.LEVELS;
+    private static final int PRIORITIES = RobotLod.LEVELS + 1;
+
+    private long tick = 0;
+    private long[] lastPosed = new long[0];
+    private int[] priority = new int[0];
+    private int[] due = new int[0];
+    private final int[] counts = new int[PRIORITIES];
+    private final int[] starts = new int[PRIORITIES + 1];
+
+    /**
+     * Average time it takes to pose one robot, in nanoseconds.
+     */
+    private double poseNanos = 200;
+
+    private long spent = 0;
+    private int posed = 0;
+    private int throttled = 0;
+    private int skipped = 0;
+
+    /**
+     * Starts a frame: resets the budget and the counters.
+     */
+    public void beginFrame() {
+        spent = 0;
+        posed = 0;
+        throttled = 0;
+        skipped = 0;
+    }
+
+    /**
+     * Poses the robots of the race that are due in this tick, as many as the
+     * budget allows. The levels of detail and the visibility of the
+     * previous frame are used; before the first frame all robots count as
+     * nearby.
+     */
+    public void tick(RaceSimulation race, RobotLod lod) {
+        int count = race.count;
+        if (count == 0) {
+            return;
+        }
+        if (lastPosed.length != count) {
+            lastPosed = new long[count];
+            priority = new int[count];
+            due = new int[count];
+            for (int i = 0; i < count; i++) {
+                lastPosed[i] = tick - CULLED_INTERVAL; // every robot is overdue
+            }
+        }
+        tick++;
+
+        boolean leveled = lod.size() == count;
+        for (int p = 0; p < PRIORITIES; p++) {
+            counts[p] = 0;
+        }
+        int dueCount = 0;
+        for (int i = 0; i < count; i++) {
+            int p;
+            if (!leveled) {
+                p = RobotLod.FULL;
+            } else {
+                p = lod.isVisible(i) ? lod.level(i) : CULLED;
+            }
+            int interval = p == CULLED ? CULLED_INTERVAL : INTERVAL[p];
+            if ((tick + i) % interval == 0 || tick - lastPosed[i] > interval) {
+                priority[i] = p;
+                counts[p]++;
+                dueCount++;
+            } else {
+                priority[i] = -1;
+                throttled++;
+            }
+        }
+
+        // sort the due robots by priority, starting at another robot every tick so the budget does not
+        // always cut off the same robots of a priority
+        starts[0] = 0;
+        for (int p = 0; p < PRIORITIES; p++) {
+            starts[p + 1] = starts[p] + counts[p];
+        }
+        int first = (int) (tick % count);
+        for (int k = 0; k < count; k++) {
+            int i = first + k < count ? first + k : first + k - count;
+            if (priority[i] >= 0) {
+                due[starts[priority[i]]++] = i;
+            }
+        }
+
+        long left = Math.max(0, BUDGET - spent);
+        int n = (int) Math.min(dueCount, left / poseNanos);
+        skipped += dueCount - n;
+        if (n == 0) {
+            return;
+        }
+        long start = System.nanoTime();
+        race.pose(due, n);
+        long elapsed = System.nanoTime() - start;
+        spent += elapsed;
+        posed += n;
+        poseNanos = Math.max(1, 0.8 * poseNanos + 0.2 * elapsed / n);
+        for (int k = 0; k < n; k++) {
+            lastPosed[due[k]] = tick;
+        }
+    }
+
+    /**
+     * Returns the number of robots posed in this frame.
+     */
+    public int getPosed() {
+        return posed;
+    }
+
+    /**
+     * Returns the number of robots that were not due in the ticks of this
+     * frame.
+     */
+    public int getThrottled() {
+        return throttled;
+    }
+
+    /**
+     * Returns the number of robots that were due in the ticks of this frame
+     * but were skipped to stay within the budget.
+     */
+    public int getSkipped() {
+        return skipped;
+    }
+}
@@ -0,0 +1,148 @@
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Cumulative arc-length table of a track that is made from Bezier parts. For
+ * every part the table holds the distance from the start of that part at
+ * evenly spaced curve parameters, so a distance along the track can be mapped
+ * to a part and a curve parameter with two binary searches.
+ */
+public class ArcLengthTable {
+
+    /**
+     * Distance from the start of the track at which each part begins. The
+     * last entry holds the length of one lap.
+     */
+    private final double[] partStart;
+
+    /**
+     * For every part, the distance from the start of that part at the curve
+     * parameter i / (number of samples - 1).
+     */
+    private final double[][] partTable;
+
+    /**
+     * Constructs the table from the per part cumulative distances. Every row
+     * starts at 0 and holds the distances at evenly spaced curve parameters.
+     */
+    public ArcLengthTable(double[][] partTable) {
+        this.partTable = partTable;
+        this.partStart = new double[partTable.length + 1];
+        for (int j = 0; j < partTable.length; j++) {
+            double[] row = partTable[j];
+            partStart[j + 1] = partStart[j] + row[row.length - 1];
+        }
+    }
+
+    /**
+     * Returns the length of one lap.
+     */
+    public double getLapLength() {
+        return partStart[partStart.length - 1];
+    }
+
+    /**
+     * Returns the number of parts in this table.
+     */
+    public int getPartCount() {
+        return partTable.length;
+    }
+
+    /**
+     * Returns the distance from the start of the track at which the given
+     * part begins.
+     */
+    public double getPartStart(int part) {
+        return partStart[part];
+    }
+
+    /**
+     * Returns the length of the given part.
+     */
+    public double getPartLength(int part) {
+        return partStart[part + 1] - partStart[part];
+    }
+
+    /**
+     * Wraps any distance (also negative ones) into [0, lap length).
+     */
+    public double wrap(double distance) {
+        double lap = getLapLength();
+        double wrapped = distance - Math.floor(distance / lap) * lap;
+        //Rounding can give exactly one lap, which belongs to the next lap
+        return wrapped >= lap ? 0 : wrapped;
+    }
+
+    /**
+     * Returns the part that contains the given distance from the start of
+     * the track, with 0 <= {@code distance} < lap length.
+     */
+    public int findPart(double distance) {
+        //Find the last part that starts at or before the distance
+        int low = 0;
+        int high = partTable.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (partStart[mid] <= distance) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the curve parameter 0 <= t <= 1 of the given part at which the
+     * distance from the start of that part equals {@code distance}.
+     */
+    public double findParameter(int part, double distance) {
+        double[] row = partTable[part];
+        int last = row.length - 1;
+        if (distance <= 0) {
+            return 0;
+        }
+        if (distance >= row[last]) {
+            return 1;
+        }
+
+        //Find the sample interval that contains the distance
+        int low = 0;
+        int high = last;
+        while (high - low > 1) {
+            int mid = (low + high) >>> 1;
+            if (row[mid] <= distance) {
+                low = mid;
+            } else {
+                high = mid;
+            }
+        }
+
+        //Interpolate linearly within the interval
+        double fraction = (distance - row[low]) / (row[high] - row[low]);
+        return (low + fraction) / last;
+    }
+
+    /**
+     * Writes this table in the format of the track cache.
+     */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(partTable.length);
+        for (double[] row : partTable) {
+            TrackCache.writeDoubles(out, row);
+        }
+    }
+
+    /**
+     * Reads a table written by {@link #write} from the track cache.
+     */
+    public static ArcLengthTable read(ByteBuffer in) {
+        double[][] partTable = new double[in.getInt()][];
+        for (int j = 0; j < partTable.length; j++) {
+            partTable[j] = TrackCache.readDoubles(in);
+        }
+        return new ArcLengthTable(partTable);
+    }
+}
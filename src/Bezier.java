@@ -0,0 +1,236 @@
+
+import robotrace.Vector;
+
+/**
+ * Allocation free evaluation of the Bezier trackparts. The control points of
+ * a track are packed in a double array, every trackpart takes
+ * DOUBLES_PER_PART doubles in the same order as the control point arrays of
+ * the race track: startpoint, endpoint, 1st controlpoint and 2nd
+ * controlpoint, each as x, y, z. Results are written into arrays supplied by
+ * the caller, so evaluating a point does not create any objects.
+ */
+public final class Bezier {
+
+    /**
+     * Build commands of a trackpart: a line, a quadratic Bezier curve and a
+     * cubic Bezier curve.
+     */
+    public static final int LINE = 0;
+    public static final int QUADRATIC = 1;
+    public static final int CUBIC = 2;
+
+    /**
+     * Number of doubles a trackpart takes in a packed control point array.
+     */
+    public static final int DOUBLES_PER_PART = 12;
+
+    /**
+     * Offsets of the control points within a packed trackpart.
+     */
+    private static final int START = 0;
+    private static final int END = 3;
+    private static final int FIRST = 6;
+    private static final int SECOND = 9;
+
+    private Bezier() {
+    }
+
+    /**
+     * Packs the control points of a track, every row holds the startpoint,
+     * endpoint, 1st controlpoint and 2nd controlpoint of a trackpart.
+     */
+    public static double[] pack(Vector[][] points) {
+        double[] packed = new double[points.length * DOUBLES_PER_PART];
+        for (int j = 0; j < points.length; j++) {
+            for (int k = 0; k < 4; k++) {
+                int i = j * DOUBLES_PER_PART + 3 * k;
+                packed[i] = points[j][k].x();
+                packed[i + 1] = points[j][k].y();
+                packed[i + 2] = points[j][k].z();
+            }
+        }
+        return packed;
+    }
+
+    /**
+     * Returns one coordinate of a line from a to b at t.
+     */
+    public static double line(double a, double b, double t) {
+        return a + (b - a) * t;
+    }
+
+    /**
+     * Returns one coordinate of a quadratic Bezier curve from a to b with
+     * controlpoint c at t.
+     */
+    public static double quadratic(double a, double c, double b, double t) {
+        double s = 1 - t;
+        return s * s * a + 2 * s * t * c + t * t * b;
+    }
+
+    /**
+     * Returns one coordinate of a cubic Bezier curve from a to b with
+     * controlpoints c and d at t.
+     */
+    public static double cubic(double a, double c, double d, double b, double t) {
+        double s = 1 - t;
+        return s * s * s * a + 3 * s * s * t * c + 3 * s * t * t * d + t * t * t * b;
+    }
+
+    /**
+     * Returns one coordinate of the derivative of a quadratic Bezier curve
+     * from a to b with controlpoint c at t.
+     */
+    public static double quadraticDerivative(double a, double c, double b, double t) {
+        return 2 * (1 - t) * (c - a) + 2 * t * (b - c);
+    }
+
+    /**
+     * Returns one coordinate of the derivative of a cubic Bezier curve from a
+     * to b with controlpoints c and d at t.
+     */
+    public static double cubicDerivative(double a, double c, double d, double b, double t) {
+        double s = 1 - t;
+        return 3 * s * s * (c - a) + 6 * s * t * (d - c) + 3 * t * t * (b - d);
+    }
+
+    /**
+     * Returns coordinate k (0 = x, 1 = y, 2 = z) of the point at t of the
+     * trackpart with the given build command, whose control points start at
+     * {@code cp[offset]}.
+     */
+    public static double coordinate(int type, double[] cp, int offset, int k, double t) {
+        double a = cp[offset + START + k];
+        double b = cp[offset + END + k];
+        if (type == LINE) {
+            return line(a, b, t);
+        } else if (type == QUADRATIC) {
+            return quadratic(a, cp[offset + FIRST + k], b, t);
+        }
+        return cubic(a, cp[offset + FIRST + k], cp[offset + SECOND + k], b, t);
+    }
+
+    /**
+     * Returns coordinate k of the derivative with respect to t of the
+     * trackpart with the given build command at t.
+     */
+    public static double derivativeCoordinate(int type, double[] cp, int offset, int k, double t) {
+        double a = cp[offset + START + k];
+        double b = cp[offset + END + k];
+        if (type == LINE) {
+            return b - a;
+        } else if (type == QUADRATIC) {
+            return quadraticDerivative(a, cp[offset + FIRST + k], b, t);
+        }
+        return cubicDerivative(a, cp[offset + FIRST + k], cp[offset + SECOND + k], b, t);
+    }
+
+    /**
+     * Writes the point at t of the trackpart with the given build command,
+     * whose control points start at {@code cp[offset]}, to
+     * {@code out[outOffset]} .. {@code out[outOffset + 2]}.
+     */
+    public static void point(int type, double[] cp, int offset, double t, double[] out, int outOffset) {
+        for (int k = 0; k < 3; k++) {
+            out[outOffset + k] = coordinate(type, cp, offset, k, t);
+        }
+    }
+
+    /**
+     * Writes the derivative with respect to t of the trackpart with the given
+     * build command at t to {@code out[outOffset]} ..
+     * {@code out[outOffset + 2]}.
+     */
+    public static void derivative(int type, double[] cp, int offset, double t, double[] out, int outOffset) {
+        for (int k = 0; k < 3; k++) {
+            out[outOffset + k] = derivativeCoordinate(type, cp, offset, k, t);
+        }
+    }
+
+    /**
+     * Writes the coefficients of the trackpart in power form, point(t) =
+     * p3 t^3 + p2 t^2 + p1 t + p0, to {@code out} as p3, p2, p1, p0 for each
+     * of x, y and z (12 doubles).
+     */
+    public static void powerForm(int type, double[] cp, int offset, double[] out) {
+        for (int k = 0; k < 3; k++) {
+            double a = cp[offset + START + k];
+            double b = cp[offset + END + k];
+            double p3 = 0;
+            double p2 = 0;
+            double p1;
+            if (type == LINE) {
+                p1 = b - a;
+            } else if (type == QUADRATIC) {
+                double c = cp[offset + FIRST + k];
+                p2 = a - 2 * c + b;
+                p1 = 2 * (c - a);
+            } else {
+                double c = cp[offset + FIRST + k];
+                double d = cp[offset + SECOND + k];
+                p3 = b - 3 * d + 3 * c - a;
+                p2 = 3 * (d - 2 * c + a);
+                p1 = 3 * (c - a);
+            }
+            out[4 * k] = p3;
+            out[4 * k + 1] = p2;
+            out[4 * k + 2] = p1;
+            out[4 * k + 3] = a;
+        }
+    }
+
+    /**
+     * Samples a trackpart at evenly spaced parameters by forward
+     * differencing: after {@link #start} every call of {@link #next} costs
+     * three additions per coordinate instead of a full evaluation. A stepper
+     * keeps its state in arrays it allocates once, so it should be reused.
+     */
+    public static final class Stepper {
+
+        /**
+         * Power form coefficients of the current trackpart.
+         */
+        private final double[] coefficients = new double[12];
+
+        /**
+         * Current point and its first, second and third forward difference.
+         */
+        private final double[] f = new double[3];
+        private final double[] d1 = new double[3];
+        private final double[] d2 = new double[3];
+        private final double[] d3 = new double[3];
+
+        /**
+         * Starts sampling the given trackpart at t = 0 in steps of 1 / steps.
+         */
+        public void start(int type, double[] cp, int offset, int steps) {
+            powerForm(type, cp, offset, coefficients);
+            double h = 1d / steps;
+            double h2 = h * h;
+            double h3 = h2 * h;
+            for (int k = 0; k < 3; k++) {
+                double p3 = coefficients[4 * k];
+                double p2 = coefficients[4 * k + 1];
+                double p1 = coefficients[4 * k + 2];
+                f[k] = coefficients[4 * k + 3];
+                d1[k] = p3 * h3 + p2 * h2 + p1 * h;
+                d2[k] = 6 * p3 * h3 + 2 * p2 * h2;
+                d3[k] = 6 * p3 * h3;
+            }
+        }
+
+        /**
+         * Writes the current point to {@code out[outOffset]} ..
+         * {@code out[outOffset + 2]} and moves to the next parameter. Calling
+         * this steps + 1 times yields the points at 0, 1 / steps, .., 1.
+         */
+        public void next(double[] out, int outOffset) {
+            for (int k = 0; k < 3; k++) {
+                out[outOffset + k] = f[k];
+                f[k] += d1[k];
+                d1[k] += d2[k];
+                d2[k] += d3[k];
+            }
+        }
+    }
+}
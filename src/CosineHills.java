@@ -0,0 +1,45 @@
+
+/**
+ * The built-in terrain function: two cosine waves across each other. Rows
+ * of points are evaluated with {@link FastCosine} unless the system property
+ * robotrace.fastcos is false; the angles of a row are gathered first and the
+ * cosines taken in separate loops, which the JIT can vectorize.
+ */
+public class CosineHills implements TerrainMesh.Heights {
+
+    /**
+     * Whether rows are evaluated with the fast cosine approximation, can be
+     * turned off with the system property robotrace.fastcos=false.
+     */
+    public static final boolean FAST_COSINE = Boolean.parseBoolean(System.getProperty("robotrace.fastcos", "true"));
+
+    /**
+     * Computes the elevation at ({@code x}, {@code y}).
+     */
+    @Override
+    public float heightAt(float x, float y) {
+        return (float) (0.6 * Math.cos(0.3 * x + 0.3 * y) + 0.4 * Math.cos(x - 0.5 * y));
+    }
+
+    @Override
+    public void heightsAt(float x, float y, float dy, int n, float[] out, int offset, float[] scratch) {
+        if (!FAST_COSINE) {
+            for (int j = 0; j < n; j++) {
+                out[offset + j] = heightAt(x, y + j * dy);
+            }
+            return;
+        }
+        float column = 0; // counts along exactly, converting j to a float every time is slow
+        for (int j = 0; j < n; j++) {
+            float yj = y + column * dy;
+            out[offset + j] = 0.3f * x + 0.3f * yj;
+            scratch[j] = x - 0.5f * yj;
+            column++;
+        }
+        FastCosine.cos(out, offset, n);
+        FastCosine.cos(scratch, 0, n);
+        for (int j = 0; j < n; j++) {
+            out[offset + j] = 0.6f * out[offset + j] + 0.4f * scratch[j];
+        }
+    }
+}
@@ -0,0 +1,236 @@
+import com.jogamp.common.nio.Buffers;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import javax.media.opengl.GL2;
+import robotrace.Vector;
+import static javax.media.opengl.GL2.*;
+
+/**
+ * Draws the robots at the two coarsest levels of {@link RobotLod} in one
+ * batch per level. Stick figures are the lines of
+ * {@link RobotGeometry#STICK_LINES}, transformed by the
+ * {@link MatrixPalette} on the CPU and drawn with a single glDrawArrays
+ * call, without the joint spheres. Impostors are quads that stand upright
+ * at the robot's position and turn to face the eye, textured with the
+ * silhouette of a robot seen from the side. The silhouette is rasterized
+ * once from the boxes of {@link RobotGeometry#LOD_BOX} in the rest pose, and
+ * is mirrored so the head points the way the robot runs.
+ *
+ * The vertex buffers grow with the largest batch and are reused, so drawing
+ * allocates nothing.
+ */
+public class DistantRobots {
+
+    /**
+     * Width and height of the silhouette texture in texels.
+     */
+    public static final int SILHOUETTE_SIZE = 64;
+
+    /**
+     * Number of stick figure points of one robot.
+     */
+    private static final int STICK_POINTS;
+
+    static {
+        int points = 0;
+        for (int l = 0; l < RobotGeometry.LIMBS; l++) {
+            points += RobotGeometry.STICK_LINES[RobotGeometry.LIMB_TYPE[l]].length / 3;
+        }
+        STICK_POINTS = points;
+    }
+
+    /**
+     * Number of floats of an impostor vertex: s, t, the color, the normal
+     * and x, y, z (GL_T2F_C4F_N3F_V3F).
+     */
+    private static final int IMPOSTOR_FLOATS = 12;
+
+    /**
+     * Extent of the silhouette in the robot's x-z plane, relative to its
+     * position: left, right, bottom, top.
+     */
+    private final float[] bounds = new float[4];
+    private final ByteBuffer silhouette;
+    private int texture = 0;
+
+    private FloatBuffer stickData = Buffers.newDirectFloatBuffer(0);
+    private FloatBuffer impostorData = Buffers.newDirectFloatBuffer(0);
+    private final float[] point = new float[3];
+
+    /**
+     * Rasterizes the silhouette.
+     */
+    public DistantRobots() {
+        // the rest pose: every limb at its origin, without rotations
+        float[] rest = new float[RobotGeometry.LIMBS * Matrix4.SIZE];
+        Matrix4.identity(rest, 0);
+        Matrix4.translate(rest, 0, RobotGeometry.ORIGIN[0], RobotGeometry.ORIGIN[1], RobotGeometry.ORIGIN[2]);
+        for (int l = 1; l < RobotGeometry.LIMBS; l++) {
+            int o = l * Matrix4.SIZE;
+            Matrix4.copy(rest, RobotGeometry.PARENT[l] * Matrix4.SIZE, rest, o);
+            Matrix4.translate(rest, o, RobotGeometry.ORIGIN[3 * l],
+                    RobotGeometry.ORIGIN[3 * l + 1], RobotGeometry.ORIGIN[3 * l + 2]);
+        }
+
+        // the boxes are axis aligned in the rest pose, so their side view is a rectangle
+        float[] boxes = new float[4 * RobotGeometry.LIMBS];
+        bounds[0] = bounds[2] = Float.MAX_VALUE;
+        bounds[1] = bounds[3] = -Float.MAX_VALUE;
+        for (int l = 0; l < RobotGeometry.LIMBS; l++) {
+            float[] box = RobotGeometry.LOD_BOX[RobotGeometry.LIMB_TYPE[l]];
+            Matrix4.transformPoint(rest, l * Matrix4.SIZE, box[0], box[1], box[2], point, 0);
+            boxes[4 * l] = point[0] - box[3] / 2;
+            boxes[4 * l + 1] = point[0] + box[3] / 2;
+            boxes[4 * l + 2] = point[2] - box[5] / 2;
+            boxes[4 * l + 3] = point[2] + box[5] / 2;
+            bounds[0] = Math.min(bounds[0], boxes[4 * l]);
+            bounds[1] = Math.max(bounds[1], boxes[4 * l + 1]);
+            bounds[2] = Math.min(bounds[2], boxes[4 * l + 2]);
+            bounds[3] = Math.max(bounds[3], boxes[4 * l + 3]);
+        }
+
+        silhouette = Buffers.newDirectByteBuffer(4 * SILHOUETTE_SIZE * SILHOUETTE_SIZE);
+        for (int t = 0; t < SILHOUETTE_SIZE; t++) {
+            float z = bounds[2] + (t + 0.5f) / SILHOUETTE_SIZE * (bounds[3] - bounds[2]);
+            for (int s = 0; s < SILHOUETTE_SIZE; s++) {
+                float x = bounds[0] + (s + 0.5f) / SILHOUETTE_SIZE * (bounds[1] - bounds[0]);
+                boolean inside = false;
+                for (int b = 0; b < boxes.length && !inside; b += 4) {
+                    inside = x >= boxes[b] && x <= boxes[b + 1] && z >= boxes[b + 2] && z <= boxes[b + 3];
+                }
+                silhouette.put((byte) 255).put((byte) 255).put((byte) 255).put(inside ? (byte) 255 : 0);
+            }
+        }
+        silhouette.rewind();
+    }
+
+    /**
+     * Draws robots {@code robots[0]} .. {@code robots[count - 1]} of the
+     * palette as black stick figures.
+     */
+    public void drawSticks(GL2 gl, MatrixPalette palette, int[] robots, int count) {
+        if (count == 0) {
+            return;
+        }
+        if (stickData.capacity() < 3 * count * STICK_POINTS) {
+            stickData = Buffers.newDirectFloatBuffer(3 * count * STICK_POINTS);
+        }
+        stickData.clear();
+        float[] matrices = palette.getMatrices();
+        for (int k = 0; k < count; k++) {
+            int i = robots[k];
+            for (int l = 0; l < RobotGeometry.LIMBS; l++) {
+                float[] lines = RobotGeometry.STICK_LINES[RobotGeometry.LIMB_TYPE[l]];
+                int o = palette.offset(i, l);
+                for (int p = 0; p < lines.length; p += 3) {
+                    Matrix4.transformPoint(matrices, o, lines[p], lines[p + 1], lines[p + 2], point, 0);
+                    stickData.put(point);
+                }
+            }
+        }
+        stickData.flip();
+
+        gl.glDisable(GL_LIGHTING);
+        gl.glBindTexture(GL_TEXTURE_2D, 0);
+        gl.glColor3f(0, 0, 0);
+        gl.glEnableClientState(GL_VERTEX_ARRAY);
+        gl.glVertexPointer(3, GL_FLOAT, 0, stickData);
+        gl.glDrawArrays(GL_LINES, 0, count * STICK_POINTS);
+        gl.glDisableClientState(GL_VERTEX_ARRAY);
+        gl.glEnable(GL_LIGHTING);
+    }
+
+    /**
+     * Draws robots {@code robots[0]} .. {@code robots[count - 1]} of the
+     * race as impostors facing the eye. Robot i has the diffuse color of
+     * {@code materials[i % materials.length]}.
+     */
+    public void drawImpostors(GL2 gl, RaceSimulation race, Vector eye, int[] robots, int count,
+            RobotRace.Material[] materials) {
+        if (count == 0) {
+            return;
+        }
+        if (texture == 0) {
+            upload(gl);
+        }
+        if (impostorData.capacity() < 4 * count * IMPOSTOR_FLOATS) {
+            impostorData = Buffers.newDirectFloatBuffer(4 * count * IMPOSTOR_FLOATS);
+        }
+        impostorData.clear();
+        for (int k = 0; k < count; k++) {
+            int i = robots[k];
+            float x = (float) race.renderX[i];
+            float y = (float) race.renderY[i];
+            float z = (float) race.renderZ[i];
+
+            // the quad turns around the z-axis to face the eye
+            float nx = (float) (eye.x() - x);
+            float ny = (float) (eye.y() - y);
+            float length = (float) Math.sqrt(nx * nx + ny * ny);
+            if (length == 0) {
+                nx = 1;
+                ny = 0;
+            } else {
+                nx /= length;
+                ny /= length;
+            }
+            // the x-axis of the silhouette runs along the side of the quad the robot is heading to
+            double yaw = race.renderFrame[i * FrameTable.SIZE + FrameTable.YAW];
+            float side = -ny * Math.cos(yaw) + nx * Math.sin(yaw) < 0 ? -1 : 1;
+            float rx = -ny * side;
+            float ry = nx * side;
+
+            float[] color = materials[i % materials.length].diffuse;
+            corner(0, 0, bounds[0], bounds[2], x, y, z, rx, ry, nx, ny, color);
+            corner(1, 0, bounds[1], bounds[2], x, y, z, rx, ry, nx, ny, color);
+            corner(1, 1, bounds[1], bounds[3], x, y, z, rx, ry, nx, ny, color);
+            corner(0, 1, bounds[0], bounds[3], x, y, z, rx, ry, nx, ny, color);
+        }
+        impostorData.flip();
+
+        gl.glEnable(GL_ALPHA_TEST);
+        gl.glAlphaFunc(GL_GREATER, 0.5f);
+        gl.glBindTexture(GL_TEXTURE_2D, texture);
+        gl.glInterleavedArrays(GL_T2F_C4F_N3F_V3F, 0, impostorData);
+        gl.glDrawArrays(GL_QUADS, 0, 4 * count);
+        gl.glDisableClientState(GL_TEXTURE_COORD_ARRAY);
+        gl.glDisableClientState(GL_COLOR_ARRAY);
+        gl.glDisableClientState(GL_NORMAL_ARRAY);
+        gl.glDisableClientState(GL_VERTEX_ARRAY);
+        gl.glBindTexture(GL_TEXTURE_2D, 0);
+        gl.glDisable(GL_ALPHA_TEST);
+    }
+
+    private void corner(float s, float t, float u, float h, float x, float y, float z,
+            float rx, float ry, float nx, float ny, float[] color) {
+        impostorData.put(s).put(t);
+        impostorData.put(color, 0, 4);
+        impostorData.put(nx).put(ny).put(0);
+        impostorData.put(x + u * rx).put(y + u * ry).put(z + h);
+    }
+
+    private void upload(GL2 gl) {
+        int[] names = new int[1];
+        gl.glGenTextures(1, names, 0);
+        texture = names[0];
+        gl.glBindTexture(GL_TEXTURE_2D, texture);
+        gl.glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+        gl.glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        gl.glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+        gl.glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+        gl.glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, SILHOUETTE_SIZE, SILHOUETTE_SIZE, 0,
+                GL_RGBA, GL_UNSIGNED_BYTE, silhouette);
+        gl.glBindTexture(GL_TEXTURE_2D, 0);
+    }
+
+    /**
+     * Deletes the silhouette texture, it is uploaded again when impostors
+     * are drawn next.
+     */
+    public void dispose(GL2 gl) {
+        if (texture != 0) {
+            gl.glDeleteTextures(1, new int[]{texture}, 0);
+            texture = 0;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+
+/**
+ * Cosine in single precision for evaluating the terrain in bulk. The angle
+ * is reduced to a fraction of a full turn, folded onto a quarter turn around
+ * the zero of the sine, and the sine is then evaluated with its Taylor
+ * polynomial up to the 11th power. Everything is float multiplications,
+ * additions and an absolute value, without branches, conversions or table
+ * lookups, so a loop that applies it to an array can be compiled to vector
+ * instructions by the JIT.
+ *
+ * The polynomial is accurate to within 6e-8 on the quarter turn; rounding of
+ * the reduced angle in single precision adds up to about 1e-7 times |x|, so
+ * the absolute error is below 3e-7 for |x| <= 1, below 1e-6 for |x| <= 10,
+ * below 1e-5 for |x| <= 100 and below 1e-4 for |x| <= 1000. The argument
+ * must be smaller than 2^22 turns.
+ */
+public class FastCosine {
+
+    private static final float INVERSE_TURN = (float) (1 / (2 * Math.PI));
+    private static final float TURN = (float) (2 * Math.PI);
+    private static final float ROUND = 0x1.8p23f;
+
+    /**
+     * Coefficients of the Taylor polynomial of the sine: 1 / -3!, 1 / 5!,
+     * ..., 1 / -11!.
+     */
+    private static final float S3 = (float) (-1.0 / 6);
+    private static final float S5 = (float) (1.0 / 120);
+    private static final float S7 = (float) (-1.0 / 5040);
+    private static final float S9 = (float) (1.0 / 362880);
+    private static final float S11 = (float) (-1.0 / 39916800);
+
+    private FastCosine() {
+    }
+
+    /**
+     * Returns the cosine of {@code x} radians within the bounds above.
+     */
+    public static float cos(float x) {
+        // the angle in turns minus the nearest whole number of turns, in [-1/2, 1/2]; adding and
+        // subtracting ROUND rounds to the nearest integer in float arithmetic alone
+        float t = x * INVERSE_TURN;
+        float u = t - ((t + ROUND) - ROUND);
+        // cos(2 pi u) = -sin(2 pi v) with v = |u| - 1/4 in [-1/4, 1/4]
+        float w = (Math.abs(u) - 0.25f) * TURN;
+        float w2 = w * w;
+        return -w * (1 + w2 * (S3 + w2 * (S5 + w2 * (S7 + w2 * (S9 + w2 * S11)))));
+    }
+
+    /**
+     * Replaces the {@code n} angles in {@code values} from {@code offset}
+     * on by their cosines. The loop is vectorized by the JIT as long as it
+     * is left on its own; fused with other work it often is not.
+     */
+    public static void cos(float[] values, int offset, int n) {
+        for (int i = offset; i < offset + n; i++) {
+            values[i] = cos(values[i]);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Table of orientation frames along a track, sampled at evenly spaced curve
+ * parameters of every trackpart. A frame holds the unit tangent, the normal
+ * and the binormal of the track, plus the heading (yaw) and slope (pitch) of
+ * the tangent in radians. Looking up a frame interpolates between two
+ * samples, so orienting a robot or camera needs no curve evaluation or trig.
+ *
+ * The classical Frenet normal points towards the center of curvature, which
+ * is undefined on straights and flips at every inflection of an S-bend. A
+ * race track needs a frame that stays level, so the normal is the horizontal
+ * direction to the left of the tangent and the binormal points up out of the
+ * road surface.
+ */
+public class FrameTable {
+
+    /**
+     * Offsets of the parts of a frame and the number of doubles per frame.
+     */
+    public static final int TANGENT = 0;
+    public static final int NORMAL = 3;
+    public static final int BINORMAL = 6;
+    public static final int YAW = 9;
+    public static final int PITCH = 10;
+    public static final int SIZE = 11;
+
+    /**
+     * For every trackpart the frames at the curve parameters i / samples.
+     */
+    private final double[][] frames;
+    private final int samples;
+
+    /**
+     * Creates a table for {@code parts} trackparts whose frames still have
+     * to be sampled with {@link #sample}.
+     */
+    public FrameTable(int parts, int samples) {
+        this(new double[parts][(samples + 1) * SIZE], samples);
+    }
+
+    /**
+     * Samples the frames of trackpart {@code part}. Different trackparts can
+     * be sampled from different threads at the same time.
+     */
+    public void sample(int part, int[] buildtype, double[] packed) {
+        double[] derivative = new double[6];
+        int offset = part * Bezier.DOUBLES_PER_PART;
+        for (int i = 0; i <= samples; i++) {
+            double t = (double) i / samples;
+            Bezier.derivative(buildtype[part], packed, offset, t, derivative, 0);
+            if (derivative[0] == 0 && derivative[1] == 0 && derivative[2] == 0) {
+                //The derivative vanishes where a controlpoint coincides with an end point,
+                //the direction of the curve there is that of a nearby chord
+                double near = Math.min(Math.max(t, 1e-4), 1 - 1e-4);
+                Bezier.point(buildtype[part], packed, offset, near - 1e-4, derivative, 0);
+                Bezier.point(buildtype[part], packed, offset, near + 1e-4, derivative, 3);
+                derivative[0] = derivative[3] - derivative[0];
+                derivative[1] = derivative[4] - derivative[1];
+                derivative[2] = derivative[5] - derivative[2];
+            }
+            frame(derivative[0], derivative[1], derivative[2], frames[part], i * SIZE);
+        }
+    }
+
+    private FrameTable(double[][] frames, int samples) {
+        this.frames = frames;
+        this.samples = samples;
+    }
+
+    /**
+     * Writes the frame for a curve with direction (tx, ty, tz) to
+     * {@code out[offset]} .. {@code out[offset + SIZE - 1]}.
+     */
+    public static void frame(double tx, double ty, double tz, double[] out, int offset) {
+        double length = Math.sqrt(tx * tx + ty * ty + tz * tz);
+        tx /= length;
+        ty /= length;
+        tz /= length;
+        double horizontal = Math.sqrt(tx * tx + ty * ty);
+
+        //Normal: the horizontal direction to the left of the tangent (Z x T)
+        double nx = -1;
+        double ny = 0;
+        if (horizontal > 0) {
+            nx = -ty / horizontal;
+            ny = tx / horizontal;
+        }
+
+        out[offset + TANGENT] = tx;
+        out[offset + TANGENT + 1] = ty;
+        out[offset + TANGENT + 2] = tz;
+        out[offset + NORMAL] = nx;
+        out[offset + NORMAL + 1] = ny;
+        out[offset + NORMAL + 2] = 0;
+        //Binormal: T x N, which points up out of the road
+        out[offset + BINORMAL] = -tz * ny;
+        out[offset + BINORMAL + 1] = tz * nx;
+        out[offset + BINORMAL + 2] = tx * ny - ty * nx;
+        out[offset + YAW] = Math.atan2(ty, tx);
+        //A robot going uphill is tilted backwards, which is a negative rotation around its y-axis
+        out[offset + PITCH] = -Math.atan2(tz, horizontal);
+    }
+
+    /**
+     * Writes the frame of trackpart {@code part} at curve parameter 0 <=
+     * {@code t} <= 1 to {@code out[0]} .. {@code out[SIZE - 1]}.
+     */
+    public void frameAt(int part, double t, double[] out) {
+        double[] row = frames[part];
+        double position = Math.min(Math.max(t, 0), 1) * samples;
+        int i = Math.min((int) position, samples - 1);
+        double f = position - i;
+        int a = i * SIZE;
+        int b = a + SIZE;
+        for (int k = 0; k < YAW; k++) {
+            out[k] = row[a + k] + f * (row[b + k] - row[a + k]);
+        }
+        normalize(out, TANGENT);
+        normalize(out, NORMAL);
+        normalize(out, BINORMAL);
+
+        //Interpolate the heading the short way around
+        double yaw = row[b + YAW] - row[a + YAW];
+        if (yaw > Math.PI) {
+            yaw -= 2 * Math.PI;
+        } else if (yaw < -Math.PI) {
+            yaw += 2 * Math.PI;
+        }
+        out[YAW] = row[a + YAW] + f * yaw;
+        out[PITCH] = row[a + PITCH] + f * (row[b + PITCH] - row[a + PITCH]);
+    }
+
+    private static void normalize(double[] v, int offset) {
+        double length = Math.sqrt(v[offset] * v[offset] + v[offset + 1] * v[offset + 1] + v[offset + 2] * v[offset + 2]);
+        if (length > 0) {
+            v[offset] /= length;
+            v[offset + 1] /= length;
+            v[offset + 2] /= length;
+        }
+    }
+
+    /**
+     * Writes this table in the format of the track cache.
+     */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(samples);
+        out.writeInt(frames.length);
+        for (double[] row : frames) {
+            TrackCache.writeDoubles(out, row);
+        }
+    }
+
+    /**
+     * Reads a table written by {@link #write} from the track cache.
+     */
+    public static FrameTable read(ByteBuffer in) {
+        int samples = in.getInt();
+        double[][] frames = new double[in.getInt()][];
+        for (int j = 0; j < frames.length; j++) {
+            frames[j] = TrackCache.readDoubles(in);
+        }
+        return new FrameTable(frames, samples);
+    }
+}
@@ -0,0 +1,119 @@
+import robotrace.Vector;
+
+/**
+ * The view frustum of the camera, as six planes whose normals point inwards.
+ * It is derived from the same parameters as gluPerspective and gluLookAt,
+ * so it needs no matrices read back from OpenGL. Bounding spheres and
+ * axis-aligned boxes are tested against it conservatively: a volume that is
+ * reported as outside is outside, a volume that is reported as visible may
+ * still be just outside a corner of the frustum.
+ *
+ * The frustum counts the volumes of every kind that were tested and culled
+ * since it was last set, so that every frame reports how much was culled.
+ */
+public class Frustum {
+
+    /**
+     * Kinds of volumes that are counted.
+     */
+    public static final int ROBOTS = 0;
+    public static final int TRACK = 1;
+    public static final int TERRAIN = 2;
+    public static final int KINDS = 3;
+
+    /**
+     * The planes as a, b, c, d with ax + by + cz + d >= 0 inside: near,
+     * far, left, right, bottom and top.
+     */
+    private final double[] planes = new double[6 * 4];
+
+    private final int[] tested = new int[KINDS];
+    private final int[] culled = new int[KINDS];
+
+    /**
+     * Sets the frustum of a camera at {@code eye} looking at {@code center}
+     * with the given up vector, with a vertical field of view of
+     * {@code fovy} degrees, the given aspect ratio and near and far
+     * clipping distances, and resets the counters.
+     */
+    public void set(double fovy, double aspect, double near, double far, Vector eye, Vector center, Vector up) {
+        Vector f = center.subtract(eye).normalized();
+        Vector s = f.cross(up).normalized();
+        Vector u = s.cross(f);
+        double tanY = Math.tan(Math.toRadians(fovy) / 2);
+        double tanX = tanY * aspect;
+
+        plane(0, f, eye.add(f.scale(near)));
+        plane(1, f.scale(-1), eye.add(f.scale(far)));
+        // the side planes go through the eye, tilted outwards by half the field of view
+        plane(2, s.add(f.scale(tanX)), eye);
+        plane(3, s.scale(-1).add(f.scale(tanX)), eye);
+        plane(4, u.add(f.scale(tanY)), eye);
+        plane(5, u.scale(-1).add(f.scale(tanY)), eye);
+
+        for (int k = 0; k < KINDS; k++) {
+            tested[k] = 0;
+            culled[k] = 0;
+        }
+    }
+
+    private void plane(int p, Vector normal, Vector point) {
+        Vector n = normal.normalized();
+        planes[4 * p] = n.x();
+        planes[4 * p + 1] = n.y();
+        planes[4 * p + 2] = n.z();
+        planes[4 * p + 3] = -n.dot(point);
+    }
+
+    /**
+     * Returns true if the sphere around ({@code x}, {@code y}, {@code z})
+     * with the given radius may be visible, and counts it as a volume of the
+     * given kind.
+     */
+    public boolean sphereVisible(int kind, double x, double y, double z, double radius) {
+        tested[kind]++;
+        for (int p = 0; p < planes.length; p += 4) {
+            if (planes[p] * x + planes[p + 1] * y + planes[p + 2] * z + planes[p + 3] < -radius) {
+                culled[kind]++;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the axis-aligned box between the given corners may be
+     * visible, and counts it as a volume of the given kind.
+     */
+    public boolean boxVisible(int kind, double minX, double minY, double minZ,
+            double maxX, double maxY, double maxZ) {
+        tested[kind]++;
+        for (int p = 0; p < planes.length; p += 4) {
+            // the corner furthest along the normal is the last to leave the plane
+            double x = planes[p] >= 0 ? maxX : minX;
+            double y = planes[p + 1] >= 0 ? maxY : minY;
+            double z = planes[p + 2] >= 0 ? maxZ : minZ;
+            if (planes[p] * x + planes[p + 1] * y + planes[p + 2] * z + planes[p + 3] < 0) {
+                culled[kind]++;
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of volumes of the given kind that were tested
+     * since the frustum was set.
+     */
+    public int getTested(int kind) {
+        return tested[kind];
+    }
+
+    /**
+     * Returns the number of volumes of the given kind that were culled
+     * since the frustum was set.
+     */
+    public int getCulled(int kind) {
+        return culled[kind];
+    }
+}
@@ -0,0 +1,407 @@
+
+import com.jogamp.common.nio.Buffers;
+import com.jogamp.opengl.util.texture.Texture;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import javax.media.opengl.GL2;
+import javax.media.opengl.GLException;
+import static javax.media.opengl.GL2.*;
+
+/**
+ * Draws all robots of a race with instancing. The mesh of every limb type
+ * (see {@link RobotGeometry}) is uploaded once to a vertex buffer object,
+ * and every frame the material number and the matrices of the
+ * {@link MatrixPalette} of the robots to draw are copied to a texture buffer.
+ * A vertex shader looks up the transformation of the instance it draws in
+ * that buffer and its material in a uniform array, so a set of robots costs
+ * one glDrawElementsInstanced call per limb type however many robots it
+ * holds. Robots can be drawn with the full meshes or with the simplified
+ * boxes of {@link RobotGeometry}.
+ *
+ * Instancing needs OpenGL 3.1 (instanced drawing, texture buffers and GLSL
+ * 1.40). When the context does not offer it, or the system property
+ * robotrace.instancing is false, {@link #isAvailable} returns false and the
+ * robots are drawn with the fixed-function pipeline instead.
+ */
+public class InstancedRobots {
+
+    /**
+     * Number of RGBA float texels per robot in the instance buffer: the
+     * number of its material, and four columns for the matrix of every limb.
+     */
+    public static final int TEXELS_PER_ROBOT = 1 + 4 * RobotGeometry.LIMBS;
+
+    private static final int FLOATS_PER_ROBOT = 4 * TEXELS_PER_ROBOT;
+
+    /**
+     * Largest number of materials the robots can be made of.
+     */
+    public static final int MAX_MATERIALS = RobotRace.Material.values().length;
+
+    /**
+     * Attribute locations of the vertex shader.
+     */
+    private static final int POSITION = 0;
+    private static final int NORMAL = 1;
+    private static final int TEXCOORD = 2;
+    private static final int TEXTURED = 3;
+
+    private static final String VERTEX_SHADER
+            = "#version 140\n"
+            + "uniform mat4 projection;\n"
+            + "uniform mat4 view;\n"
+            + "uniform samplerBuffer instances;\n"
+            + "uniform int firstLimb;\n"
+            + "uniform int copies;\n"
+            + "uniform vec4 materialDiffuse[" + MAX_MATERIALS + "];\n"
+            + "uniform vec4 materialSpecular[" + MAX_MATERIALS + "];\n"
+            + "in vec3 position;\n"
+            + "in vec3 normal;\n"
+            + "in vec2 texCoord;\n"
+            + "in float textured;\n"
+            + "out vec3 eyePosition;\n"
+            + "out vec3 eyeNormal;\n"
+            + "out vec2 uv;\n"
+            + "out float useTexture;\n"
+            + "flat out vec4 diffuse;\n"
+            + "flat out vec4 specular;\n"
+            + "void main() {\n"
+            + "    int robot = gl_InstanceID / copies;\n"
+            + "    int base = robot * " + TEXELS_PER_ROBOT + ";\n"
+            + "    int m = base + 1 + 4 * (firstLimb + gl_InstanceID - robot * copies);\n"
+            + "    mat4 model = mat4(texelFetch(instances, m), texelFetch(instances, m + 1),\n"
+            + "            texelFetch(instances, m + 2), texelFetch(instances, m + 3));\n"
+            + "    mat4 modelView = view * model;\n"
+            + "    vec4 eye = modelView * vec4(position, 1.0);\n"
+            + "    eyePosition = eye.xyz;\n"
+            + "    eyeNormal = mat3(modelView) * normal;\n"
+            + "    uv = texCoord;\n"
+            + "    useTexture = textured;\n"
+            + "    int material = int(texelFetch(instances, base).x);\n"
+            + "    diffuse = materialDiffuse[material];\n"
+            + "    specular = materialSpecular[material];\n"
+            + "    gl_Position = projection * eye;\n"
+            + "}\n";
+
+    /**
+     * Lights the fragment like the fixed-function pipeline does with
+     * GL_COLOR_MATERIAL, for the two lights the scene uses.
+     */
+    private static final String FRAGMENT_SHADER
+            = "#version 140\n"
+            + "uniform sampler2D image;\n"
+            + "uniform vec4 sceneAmbient;\n"
+            + "uniform vec4 lightPosition[2];\n"
+            + "uniform vec4 lightAmbient[2];\n"
+            + "uniform vec4 lightDiffuse[2];\n"
+            + "uniform vec4 lightSpecular[2];\n"
+            + "in vec3 eyePosition;\n"
+            + "in vec3 eyeNormal;\n"
+            + "in vec2 uv;\n"
+            + "in float useTexture;\n"
+            + "flat in vec4 diffuse;\n"
+            + "flat in vec4 specular;\n"
+            + "out vec4 fragColor;\n"
+            + "void main() {\n"
+            + "    vec3 n = normalize(eyeNormal);\n"
+            + "    vec3 v = normalize(-eyePosition);\n"
+            + "    vec3 color = sceneAmbient.rgb * diffuse.rgb;\n"
+            + "    vec3 highlight = vec3(0.0);\n"
+            + "    for (int i = 0; i < 2; i++) {\n"
+            + "        vec3 l = normalize(lightPosition[i].xyz - eyePosition * lightPosition[i].w);\n"
+            + "        float lambert = max(dot(n, l), 0.0);\n"
+            + "        color += diffuse.rgb * (lightAmbient[i].rgb + lightDiffuse[i].rgb * lambert);\n"
+            + "        if (lambert > 0.0) {\n"
+            + "            highlight += specular.rgb * lightSpecular[i].rgb\n"
+            + "                    * pow(max(dot(n, normalize(l + v)), 0.0), specular.a);\n"
+            + "        }\n"
+            + "    }\n"
+            + "    vec4 result = vec4(min(color + highlight, 1.0), diffuse.a);\n"
+            + "    if (useTexture > 0.5) {\n"
+            + "        result *= texture(image, uv);\n"
+            + "    }\n"
+            + "    fragColor = result;\n"
+            + "}\n";
+
+    /**
+     * Whether instancing was not tried yet, works, or is not supported.
+     */
+    private static final int UNKNOWN = 0;
+    private static final int AVAILABLE = 1;
+    private static final int UNAVAILABLE = 2;
+
+    private final RobotGeometry geometry = new RobotGeometry();
+
+    private int state = Boolean.parseBoolean(System.getProperty("robotrace.instancing", "true")) ? UNKNOWN : UNAVAILABLE;
+
+    /**
+     * Shader program and the locations of its uniforms.
+     */
+    private int program;
+    private int projectionLocation;
+    private int viewLocation;
+    private int instancesLocation;
+    private int firstLimbLocation;
+    private int copiesLocation;
+    private int materialDiffuseLocation;
+    private int materialSpecularLocation;
+    private int imageLocation;
+    private int sceneAmbientLocation;
+    private int lightPositionLocation;
+    private int lightAmbientLocation;
+    private int lightDiffuseLocation;
+    private int lightSpecularLocation;
+
+    /**
+     * Vertex buffer object with the meshes of all limb types, and the
+     * triangles of every limb type in every mesh set.
+     */
+    private int vbo;
+    private final IntBuffer[][] indices = new IntBuffer[RobotGeometry.MESH_SETS][RobotGeometry.LIMB_TYPES];
+
+    /**
+     * Buffer object and buffer texture with the instance data.
+     */
+    private int instanceBuffer;
+    private int instanceTexture;
+
+    /**
+     * Number of robots that fit in the largest buffer texture the context
+     * supports, larger races are drawn in batches of this many robots.
+     */
+    private int batchSize;
+
+    /**
+     * Direct buffer the instance data is gathered in for uploading.
+     */
+    private FloatBuffer instanceData = Buffers.newDirectFloatBuffer(0);
+
+    /**
+     * Scratch arrays for the materials, and for the matrices and lights
+     * read back from OpenGL.
+     */
+    private final float[] diffuse = new float[4 * MAX_MATERIALS];
+    private final float[] specular = new float[4 * MAX_MATERIALS];
+    private final float[] matrix = new float[Matrix4.SIZE];
+    private final float[] lights = new float[4 * 4 * 2];
+    private final float[] ambient = new float[4];
+
+    /**
+     * Returns whether the robots can be drawn with instancing, compiling the
+     * shaders and uploading the meshes the first time.
+     */
+    public boolean isAvailable(GL2 gl) {
+        if (state == UNKNOWN) {
+            try {
+                state = initialize(gl) ? AVAILABLE : UNAVAILABLE;
+            } catch (GLException e) {
+                System.out.println("Instanced robots are not available: " + e.getMessage());
+                state = UNAVAILABLE;
+            }
+        }
+        return state == AVAILABLE;
+    }
+
+    private boolean initialize(GL2 gl) {
+        if (!gl.isFunctionAvailable("glDrawElementsInstanced") || !gl.isFunctionAvailable("glTexBuffer")) {
+            System.out.println("Instanced robots are not available: OpenGL 3.1 is not supported");
+            return false;
+        }
+        program = gl.glCreateProgram();
+        int vertexShader = compile(gl, GL_VERTEX_SHADER, VERTEX_SHADER);
+        int fragmentShader = compile(gl, GL_FRAGMENT_SHADER, FRAGMENT_SHADER);
+        if (vertexShader == 0 || fragmentShader == 0) {
+            return false;
+        }
+        gl.glAttachShader(program, vertexShader);
+        gl.glAttachShader(program, fragmentShader);
+        gl.glBindAttribLocation(program, POSITION, "position");
+        gl.glBindAttribLocation(program, NORMAL, "normal");
+        gl.glBindAttribLocation(program, TEXCOORD, "texCoord");
+        gl.glBindAttribLocation(program, TEXTURED, "textured");
+        gl.glLinkProgram(program);
+        gl.glDeleteShader(vertexShader);
+        gl.glDeleteShader(fragmentShader);
+        int[] status = new int[1];
+        gl.glGetProgramiv(program, GL_LINK_STATUS, status, 0);
+        if (status[0] == 0) {
+            System.out.println("Instanced robots are not available, linking failed: " + programLog(gl));
+            return false;
+        }
+        projectionLocation = gl.glGetUniformLocation(program, "projection");
+        viewLocation = gl.glGetUniformLocation(program, "view");
+        instancesLocation = gl.glGetUniformLocation(program, "instances");
+        firstLimbLocation = gl.glGetUniformLocation(program, "firstLimb");
+        copiesLocation = gl.glGetUniformLocation(program, "copies");
+        materialDiffuseLocation = gl.glGetUniformLocation(program, "materialDiffuse");
+        materialSpecularLocation = gl.glGetUniformLocation(program, "materialSpecular");
+        imageLocation = gl.glGetUniformLocation(program, "image");
+        sceneAmbientLocation = gl.glGetUniformLocation(program, "sceneAmbient");
+        lightPositionLocation = gl.glGetUniformLocation(program, "lightPosition");
+        lightAmbientLocation = gl.glGetUniformLocation(program, "lightAmbient");
+        lightDiffuseLocation = gl.glGetUniformLocation(program, "lightDiffuse");
+        lightSpecularLocation = gl.glGetUniformLocation(program, "lightSpecular");
+
+        int[] names = new int[2];
+        gl.glGenBuffers(2, names, 0);
+        vbo = names[0];
+        instanceBuffer = names[1];
+        float[] vertices = geometry.getVertices();
+        gl.glBindBuffer(GL_ARRAY_BUFFER, vbo);
+        gl.glBufferData(GL_ARRAY_BUFFER, vertices.length * Buffers.SIZEOF_FLOAT,
+                Buffers.newDirectFloatBuffer(vertices), GL_STATIC_DRAW);
+        gl.glBindBuffer(GL_ARRAY_BUFFER, 0);
+        for (int set = 0; set < RobotGeometry.MESH_SETS; set++) {
+            for (int type = 0; type < RobotGeometry.LIMB_TYPES; type++) {
+                indices[set][type] = Buffers.newDirectIntBuffer(geometry.getIndices(set, type));
+            }
+        }
+
+        gl.glGenTextures(1, names, 0);
+        instanceTexture = names[0];
+        gl.glGetIntegerv(GL_MAX_TEXTURE_BUFFER_SIZE, status, 0);
+        batchSize = status[0] / TEXELS_PER_ROBOT;
+        if (batchSize == 0) {
+            System.out.println("Instanced robots are not available: texture buffers are too small");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Compiles a shader and returns its name, or 0 if it does not compile.
+     */
+    private int compile(GL2 gl, int type, String source) {
+        int shader = gl.glCreateShader(type);
+        gl.glShaderSource(shader, 1, new String[]{source}, new int[]{source.length()}, 0);
+        gl.glCompileShader(shader);
+        int[] status = new int[1];
+        gl.glGetShaderiv(shader, GL_COMPILE_STATUS, status, 0);
+        if (status[0] == 0) {
+            gl.glGetShaderiv(shader, GL_INFO_LOG_LENGTH, status, 0);
+            byte[] log = new byte[Math.max(1, status[0])];
+            gl.glGetShaderInfoLog(shader, log.length, status, 0, log, 0);
+            System.out.println("Instanced robots are not available, compiling a shader failed: "
+                    + new String(log, 0, status[0]));
+            gl.glDeleteShader(shader);
+            return 0;
+        }
+        return shader;
+    }
+
+    private String programLog(GL2 gl) {
+        int[] length = new int[1];
+        gl.glGetProgramiv(program, GL_INFO_LOG_LENGTH, length, 0);
+        byte[] log = new byte[Math.max(1, length[0])];
+        gl.glGetProgramInfoLog(program, log.length, length, 0, log, 0);
+        return new String(log, 0, length[0]);
+    }
+
+    /**
+     * Draws robots {@code robots[0]} .. {@code robots[count - 1]} of the
+     * palette with the meshes of the given set, with the current projection
+     * and modelview matrices and lights. Robot i is made of
+     * {@code materials[i % materials.length]}, there can be at most
+     * MAX_MATERIALS materials.
+     */
+    public void draw(GL2 gl, MatrixPalette palette, int[] robots, int count, int set,
+            RobotRace.Material[] materials, Texture torso, Texture head) {
+        if (count == 0) {
+            return;
+        }
+        if (instanceData.capacity() < count * FLOATS_PER_ROBOT) {
+            instanceData = Buffers.newDirectFloatBuffer(count * FLOATS_PER_ROBOT);
+        }
+        instanceData.clear();
+        float[] matrices = palette.getMatrices();
+        for (int k = 0; k < count; k++) {
+            int i = robots[k];
+            instanceData.put(i % materials.length).put(0).put(0).put(0);
+            instanceData.put(matrices, palette.offset(i, 0), MatrixPalette.FLOATS_PER_ROBOT);
+        }
+
+        gl.glUseProgram(program);
+        for (int k = 0; k < materials.length; k++) {
+            System.arraycopy(materials[k].diffuse, 0, diffuse, 4 * k, 4);
+            System.arraycopy(materials[k].specular, 0, specular, 4 * k, 3);
+            specular[4 * k + 3] = materials[k].shininess * 128;
+        }
+        gl.glUniform4fv(materialDiffuseLocation, materials.length, diffuse, 0);
+        gl.glUniform4fv(materialSpecularLocation, materials.length, specular, 0);
+        gl.glGetFloatv(GL_PROJECTION_MATRIX, matrix, 0);
+        gl.glUniformMatrix4fv(projectionLocation, 1, false, matrix, 0);
+        gl.glGetFloatv(GL_MODELVIEW_MATRIX, matrix, 0);
+        gl.glUniformMatrix4fv(viewLocation, 1, false, matrix, 0);
+        gl.glGetFloatv(GL_LIGHT_MODEL_AMBIENT, ambient, 0);
+        gl.glUniform4fv(sceneAmbientLocation, 1, ambient, 0);
+        for (int l = 0; l < 2; l++) {
+            gl.glGetLightfv(GL_LIGHT0 + l, GL_POSITION, lights, 4 * l); // in eye coordinates
+            gl.glGetLightfv(GL_LIGHT0 + l, GL_AMBIENT, lights, 8 + 4 * l);
+            gl.glGetLightfv(GL_LIGHT0 + l, GL_DIFFUSE, lights, 16 + 4 * l);
+            gl.glGetLightfv(GL_LIGHT0 + l, GL_SPECULAR, lights, 24 + 4 * l);
+        }
+        gl.glUniform4fv(lightPositionLocation, 2, lights, 0);
+        gl.glUniform4fv(lightAmbientLocation, 2, lights, 8);
+        gl.glUniform4fv(lightDiffuseLocation, 2, lights, 16);
+        gl.glUniform4fv(lightSpecularLocation, 2, lights, 24);
+        gl.glUniform1i(imageLocation, 0);
+        gl.glUniform1i(instancesLocation, 1);
+
+        gl.glBindBuffer(GL_ARRAY_BUFFER, vbo);
+        int stride = RobotGeometry.FLOATS_PER_VERTEX * Buffers.SIZEOF_FLOAT;
+        gl.glVertexAttribPointer(POSITION, 3, GL_FLOAT, false, stride, RobotGeometry.POSITION * Buffers.SIZEOF_FLOAT);
+        gl.glVertexAttribPointer(NORMAL, 3, GL_FLOAT, false, stride, RobotGeometry.NORMAL * Buffers.SIZEOF_FLOAT);
+        gl.glVertexAttribPointer(TEXCOORD, 2, GL_FLOAT, false, stride, RobotGeometry.TEXCOORD * Buffers.SIZEOF_FLOAT);
+        gl.glVertexAttribPointer(TEXTURED, 1, GL_FLOAT, false, stride, RobotGeometry.TEXTURED * Buffers.SIZEOF_FLOAT);
+        for (int a = POSITION; a <= TEXTURED; a++) {
+            gl.glEnableVertexAttribArray(a);
+        }
+
+        for (int first = 0; first < count; first += batchSize) {
+            int batch = Math.min(batchSize, count - first);
+            instanceData.limit((first + batch) * FLOATS_PER_ROBOT);
+            instanceData.position(first * FLOATS_PER_ROBOT);
+            gl.glBindBuffer(GL_TEXTURE_BUFFER, instanceBuffer);
+            gl.glBufferData(GL_TEXTURE_BUFFER, batch * FLOATS_PER_ROBOT * Buffers.SIZEOF_FLOAT,
+                    instanceData.slice(), GL_STREAM_DRAW);
+            gl.glBindBuffer(GL_TEXTURE_BUFFER, 0);
+            gl.glActiveTexture(GL_TEXTURE1);
+            gl.glBindTexture(GL_TEXTURE_BUFFER, instanceTexture);
+            gl.glTexBuffer(GL_TEXTURE_BUFFER, GL_RGBA32F, instanceBuffer);
+            gl.glActiveTexture(GL_TEXTURE0);
+
+            for (int type = 0; type < RobotGeometry.LIMB_TYPES; type++) {
+                if (set == RobotGeometry.SOLID && type == RobotGeometry.TORSO) {
+                    torso.bind(gl);
+                } else if (set == RobotGeometry.SOLID && type == RobotGeometry.HEAD) {
+                    head.bind(gl);
+                }
+                gl.glUniform1i(firstLimbLocation, RobotGeometry.FIRST_LIMB[type]);
+                gl.glUniform1i(copiesLocation, RobotGeometry.COPIES[type]);
+                IntBuffer triangles = indices[set][type];
+                gl.glDrawElementsInstanced(GL_TRIANGLES, triangles.capacity(), GL_UNSIGNED_INT,
+                        triangles, batch * RobotGeometry.COPIES[type]);
+            }
+        }
+        for (int a = POSITION; a <= TEXTURED; a++) {
+            gl.glDisableVertexAttribArray(a);
+        }
+        gl.glBindBuffer(GL_ARRAY_BUFFER, 0);
+        gl.glActiveTexture(GL_TEXTURE1);
+        gl.glBindTexture(GL_TEXTURE_BUFFER, 0);
+        gl.glActiveTexture(GL_TEXTURE0);
+        gl.glUseProgram(0);
+    }
+
+    /**
+     * Deletes the shader program, buffers and texture.
+     */
+    public void dispose(GL2 gl) {
+        if (state == AVAILABLE) {
+            gl.glDeleteProgram(program);
+            gl.glDeleteBuffers(2, new int[]{vbo, instanceBuffer}, 0);
+            gl.glDeleteTextures(1, new int[]{instanceTexture}, 0);
+            state = UNKNOWN;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+
+/**
+ * Operations on 4x4 float matrices stored column-major in 16 consecutive
+ * elements of an array, the layout OpenGL uses. Matrices are modified in
+ * place and multiplied on the right, like the fixed-function matrix stack, so
+ * a chain of calls reads in the same order as the glTranslate and glRotate
+ * calls it replaces.
+ */
+public final class Matrix4 {
+
+    /**
+     * Number of floats in a matrix.
+     */
+    public static final int SIZE = 16;
+
+    /**
+     * Axes to rotate around.
+     */
+    public static final int X = 0;
+    public static final int Y = 1;
+    public static final int Z = 2;
+
+    private Matrix4() {
+    }
+
+    /**
+     * Sets the matrix at {@code m[o]} to the identity.
+     */
+    public static void identity(float[] m, int o) {
+        for (int k = 0; k < SIZE; k++) {
+            m[o + k] = k % 5 == 0 ? 1 : 0;
+        }
+    }
+
+    /**
+     * Copies the matrix at {@code from[fo]} to {@code to[oo]}.
+     */
+    public static void copy(float[] from, int fo, float[] to, int oo) {
+        System.arraycopy(from, fo, to, oo, SIZE);
+    }
+
+    /**
+     * Multiplies the matrix at {@code m[o]} by a translation.
+     */
+    public static void translate(float[] m, int o, float x, float y, float z) {
+        for (int k = 0; k < 4; k++) {
+            m[o + 12 + k] += m[o + k] * x + m[o + 4 + k] * y + m[o + 8 + k] * z;
+        }
+    }
+
+    /**
+     * Multiplies the matrix at {@code m[o]} by a scaling.
+     */
+    public static void scale(float[] m, int o, float x, float y, float z) {
+        for (int k = 0; k < 4; k++) {
+            m[o + k] *= x;
+            m[o + 4 + k] *= y;
+            m[o + 8 + k] *= z;
+        }
+    }
+
+    /**
+     * Multiplies the matrix at {@code m[o]} by a rotation of
+     * {@code degrees} around the given axis.
+     */
+    public static void rotate(float[] m, int o, double degrees, int axis) {
+        double radians = Math.toRadians(degrees);
+        rotate(m, o, (float) Math.cos(radians), (float) Math.sin(radians), axis);
+    }
+
+    /**
+     * Multiplies the matrix at {@code m[o]} by the rotation around the given
+     * axis with the given cosine and sine.
+     */
+    public static void rotate(float[] m, int o, float cos, float sin, int axis) {
+        // the rotation only mixes the two columns of the other axes
+        int a = o + 4 * ((axis + 1) % 3);
+        int b = o + 4 * ((axis + 2) % 3);
+        for (int k = 0; k < 4; k++) {
+            float ca = m[a + k];
+            float cb = m[b + k];
+            m[a + k] = ca * cos + cb * sin;
+            m[b + k] = cb * cos - ca * sin;
+        }
+    }
+
+    /**
+     * Transforms the point ({@code x}, {@code y}, {@code z}) by the matrix
+     * at {@code m[o]} and writes it to {@code out[oo]} .. {@code out[oo + 2]}.
+     */
+    public static void transformPoint(float[] m, int o, float x, float y, float z, float[] out, int oo) {
+        for (int k = 0; k < 3; k++) {
+            out[oo + k] = m[o + k] * x + m[o + 4 + k] * y + m[o + 8 + k] * z + m[o + 12 + k];
+        }
+    }
+
+    /**
+     * Transforms the normal ({@code x}, {@code y}, {@code z}) by the matrix
+     * at {@code m[o]}, which may scale unevenly, and writes it with unit
+     * length to {@code out[oo]} .. {@code out[oo + 2]}.
+     */
+    public static void transformNormal(float[] m, int o, float x, float y, float z, float[] out, int oo) {
+        // normals transform with the inverse transpose, which is the cofactor matrix up to a positive factor
+        float nx = 0;
+        float ny = 0;
+        float nz = 0;
+        for (int c = 0; c < 3; c++) {
+            float v = c == 0 ? x : c == 1 ? y : z;
+            int c1 = o + 4 * ((c + 1) % 3);
+            int c2 = o + 4 * ((c + 2) % 3);
+            // column c of the cofactor matrix is the cross product of the other two columns
+            nx += v * (m[c1 + 1] * m[c2 + 2] - m[c1 + 2] * m[c2 + 1]);
+            ny += v * (m[c1 + 2] * m[c2] - m[c1] * m[c2 + 2]);
+            nz += v * (m[c1] * m[c2 + 1] - m[c1 + 1] * m[c2]);
+        }
+        float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+        out[oo] = nx / length;
+        out[oo + 1] = ny / length;
+        out[oo + 2] = nz / length;
+    }
+}
@@ -0,0 +1,105 @@
+
+/**
+ * World transformations of every limb of every robot in a race. The limb
+ * hierarchy of {@link RobotGeometry} is flat and in parent order, so all
+ * transformations of a robot are computed in one pass over its limbs: the
+ * matrix of a limb is the matrix of its parent, translated to the limb's
+ * origin and rotated by its pose angle. The matrices of robot i are
+ * LIMBS consecutive column-major float matrices, which can be passed to
+ * glMultMatrixf or uploaded as they are, and which can also be used for
+ * picking and collisions.
+ */
+public class MatrixPalette {
+
+    /**
+     * Number of floats of the matrices of one robot.
+     */
+    public static final int FLOATS_PER_ROBOT = RobotGeometry.LIMBS * Matrix4.SIZE;
+
+    private float[] matrices = new float[0];
+    private int count = 0;
+
+    /**
+     * Computes the matrices of all robots of the race for their render
+     * position, orientation and pose.
+     */
+    public void update(RaceSimulation race) {
+        if (count != race.count) {
+            count = race.count;
+            matrices = new float[count * FLOATS_PER_ROBOT];
+        }
+        float[] m = matrices;
+        for (int i = 0; i < count; i++) {
+            int o = i * FLOATS_PER_ROBOT;
+
+            // the torso is rotated around the z-axis by the yaw and then around the y-axis by the pitch
+            int f = i * FrameTable.SIZE;
+            float cy = (float) Math.cos(race.renderFrame[f + FrameTable.YAW]);
+            float sy = (float) Math.sin(race.renderFrame[f + FrameTable.YAW]);
+            float cp = (float) Math.cos(race.renderFrame[f + FrameTable.PITCH]);
+            float sp = (float) Math.sin(race.renderFrame[f + FrameTable.PITCH]);
+            m[o] = cy * cp;
+            m[o + 1] = sy * cp;
+            m[o + 2] = -sp;
+            m[o + 3] = 0;
+            m[o + 4] = -sy;
+            m[o + 5] = cy;
+            m[o + 6] = 0;
+            m[o + 7] = 0;
+            m[o + 8] = cy * sp;
+            m[o + 9] = sy * sp;
+            m[o + 10] = cp;
+            m[o + 11] = 0;
+            m[o + 12] = (float) race.renderX[i] + RobotGeometry.ORIGIN[0];
+            m[o + 13] = (float) race.renderY[i] + RobotGeometry.ORIGIN[1];
+            m[o + 14] = (float) race.renderZ[i] + RobotGeometry.ORIGIN[2];
+            m[o + 15] = 1;
+
+            int p = i * RaceSimulation.POSE_SIZE;
+            for (int l = 1; l < RobotGeometry.LIMBS; l++) {
+                int limb = o + l * Matrix4.SIZE;
+                Matrix4.copy(m, o + RobotGeometry.PARENT[l] * Matrix4.SIZE, m, limb);
+                Matrix4.translate(m, limb, RobotGeometry.ORIGIN[3 * l],
+                        RobotGeometry.ORIGIN[3 * l + 1], RobotGeometry.ORIGIN[3 * l + 2]);
+                int angle = RobotGeometry.POSE_ANGLE[l];
+                if (angle >= 0) {
+                    double radians = Math.toRadians(race.renderPose[p + angle]);
+                    Matrix4.rotate(m, limb, (float) Math.cos(radians), (float) Math.sin(radians), Matrix4.Y);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the matrices of all robots, robot i's limb l at
+     * {@link #offset offset(i, l)}.
+     */
+    public float[] getMatrices() {
+        return matrices;
+    }
+
+    /**
+     * Returns the index of the matrix of limb l of robot i.
+     */
+    public int offset(int i, int l) {
+        return i * FLOATS_PER_ROBOT + l * Matrix4.SIZE;
+    }
+
+    /**
+     * Returns the number of robots.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Writes the world position of the joint of limb l of robot i to
+     * {@code out[0]} .. {@code out[2]}.
+     */
+    public void jointPosition(int i, int l, float[] out) {
+        int o = offset(i, l);
+        out[0] = matrices[o + 12];
+        out[1] = matrices[o + 13];
+        out[2] = matrices[o + 14];
+    }
+}
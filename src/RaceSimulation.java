@@ -0,0 +1,471 @@
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * State of all robots in a race, kept as one primitive array per quantity
+ * (structure of arrays) instead of an object per robot, so that a race can
+ * have any number of robots and every tick is a few tight loops over those
+ * arrays. Robot i drives in lane i modulo the number of lanes; when there are
+ * more robots than lanes, the robots that share a lane start ROBOT_SPACING
+ * behind each other.
+ *
+ * Every robot draws its random numbers from its own SplitMix64 stream, and
+ * the streams are derived from the seed of the race. A tick updates every
+ * robot from its own state only, so the robots are advanced in parallel
+ * chunks and the same seed and times give bit-identical races at any number
+ * of threads.
+ *
+ * The race is advanced in fixed ticks (see {@link SimulationClock}). Every
+ * tick first saves the position, frame and pose of every robot, so that the
+ * robots can be drawn in between the last two ticks with
+ * {@link #interpolate}.
+ *
+ * The pose of the legs is only for show, so a tick can {@link #move} the
+ * robots without posing them and leave it to the caller to {@link #pose}
+ * some of them (see {@link AnimationScheduler}). Their distance, speed and
+ * random streams do not depend on their poses and stay exact.
+ */
+public class RaceSimulation {
+
+    /**
+     * Number of robots in a race, can be changed with the system property
+     * robotrace.robots.
+     */
+    public static final int ROBOTS = Math.max(1, Integer.getInteger("robotrace.robots", 4));
+
+    /**
+     * Seed of the race, can be set with the system property robotrace.seed
+     * to run the same race again.
+     */
+    public static final long SEED = Long.getLong("robotrace.seed", System.nanoTime());
+
+    /**
+     * Distance between the starting positions of robots that share a lane.
+     */
+    public static final double ROBOT_SPACING = 12;
+
+    /**
+     * Legs of a robot, in the order of their pose angles.
+     */
+    public static final int FORE_LEFT = 0;
+    public static final int FORE_RIGHT = 1;
+    public static final int HIND_LEFT = 2;
+    public static final int HIND_RIGHT = 3;
+
+    /**
+     * Pose angles per robot: for every leg the angle of the upper leg and of
+     * the lower leg around the y-axis, in degrees.
+     */
+    public static final int POSE_SIZE = 8;
+
+    /**
+     * Starting point of the walk cycle of every leg, each leg starts 0.4
+     * later than the previous one.
+     */
+    private static final double[] LEG_PHASE = {0, 0.8, 1.2, 0.4};
+
+    /**
+     * The angle the legs can make, relative to the vector (0, 0, -1) from
+     * their joint.
+     */
+    private static final double MAX_LEG_ANGLE = 35;
+
+    /**
+     * Length of one walk cycle, in walk phase units.
+     */
+    private static final double WALK_PERIOD = 5;
+
+    /**
+     * Distance a robot travels per unit of walk phase.
+     */
+    private static final double STRIDE = 8;
+
+    /**
+     * Number of samples of one walk cycle in the gait table. Interpolating
+     * linearly between the samples is off by at most
+     * MAX_LEG_ANGLE * (2 * pi / GAIT_SAMPLES)^2 / 8, about 0.003 degrees.
+     */
+    private static final int GAIT_SAMPLES = 256;
+
+    /**
+     * Upper leg angles of all four legs at GAIT_SAMPLES + 1 evenly spaced
+     * points of the walk cycle. The last point equals the first so that
+     * interpolating never has to wrap around.
+     */
+    private static final double[] GAIT = gait();
+
+    /**
+     * Threads that advance the race, the number of threads can be set with
+     * the system property robotrace.threads.
+     */
+    private static final ForkJoinPool POOL = new ForkJoinPool(
+            Integer.getInteger("robotrace.threads", Runtime.getRuntime().availableProcessors()));
+
+    /**
+     * A step task advances at most this many robots itself and splits larger
+     * ranges in two.
+     */
+    private static final int ROBOTS_PER_TASK = 1024;
+
+    /**
+     * Increment of the SplitMix64 generator, the odd integer closest to
+     * 2^64 divided by the golden ratio.
+     */
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    public final int count;
+
+    /**
+     * Distance every robot travelled along its lane and its speed.
+     */
+    public final double[] distance;
+    public final double[] speed;
+
+    /**
+     * Lane and trackpart (segment) every robot is on.
+     */
+    public final int[] lane;
+    public final int[] segment;
+
+    /**
+     * Position of every robot.
+     */
+    public final double[] x;
+    public final double[] y;
+    public final double[] z;
+
+    /**
+     * Frame of the track at every robot (see {@link FrameTable}),
+     * FrameTable.SIZE doubles per robot; the yaw and pitch in it orient the
+     * robot.
+     */
+    public final double[] frame;
+
+    /**
+     * Pose angles of every robot, POSE_SIZE doubles per robot.
+     */
+    public final double[] pose;
+
+    /**
+     * Position, frame and pose of every robot after the previous tick.
+     */
+    private final double[] previousX;
+    private final double[] previousY;
+    private final double[] previousZ;
+    private final double[] previousFrame;
+    private final double[] previousPose;
+
+    /**
+     * Position, frame and pose every robot is drawn with, interpolated
+     * between the previous and the last tick.
+     */
+    public final double[] renderX;
+    public final double[] renderY;
+    public final double[] renderZ;
+    public final double[] renderFrame;
+    public final double[] renderPose;
+
+    public final long seed;
+
+    /**
+     * State of the random stream of every robot.
+     */
+    private final long[] random;
+
+    /**
+     * Time of the last call of {@link #advance}.
+     */
+    private double lastTime = 0;
+
+    public RaceSimulation(int count, long seed) {
+        this.count = count;
+        this.seed = seed;
+        distance = new double[count];
+        speed = new double[count];
+        lane = new int[count];
+        segment = new int[count];
+        x = new double[count];
+        y = new double[count];
+        z = new double[count];
+        frame = new double[count * FrameTable.SIZE];
+        pose = new double[count * POSE_SIZE];
+        previousX = new double[count];
+        previousY = new double[count];
+        previousZ = new double[count];
+        previousFrame = new double[count * FrameTable.SIZE];
+        previousPose = new double[count * POSE_SIZE];
+        renderX = new double[count];
+        renderY = new double[count];
+        renderZ = new double[count];
+        renderFrame = new double[count * FrameTable.SIZE];
+        renderPose = new double[count * POSE_SIZE];
+        random = new long[count];
+        long state = seed;
+        for (int i = 0; i < count; i++) {
+            //Every robot's stream starts at the next output of the race's stream
+            state += GOLDEN_GAMMA;
+            random[i] = mix(state);
+            //The speed of the robot is gradually changed using a random number
+            speed[i] = 20 + nextDouble(i) * 2;
+            frame[i * FrameTable.SIZE + FrameTable.TANGENT] = 1;
+        }
+        assignLanes(4);
+        settle();
+        interpolate(1);
+    }
+
+    /**
+     * Puts robot i in lane i modulo {@code lanes} and moves it back to its
+     * starting position.
+     */
+    public final void assignLanes(int lanes) {
+        for (int i = 0; i < count; i++) {
+            lane[i] = i % lanes;
+            distance[i] = -(i / lanes) * ROBOT_SPACING;
+        }
+    }
+
+    /**
+     * Advances the race to {@code time}: every robot moves along its lane at
+     * its speed, its speed drifts a little, and its legs are posed for its
+     * place in the walk cycle.
+     */
+    public void advance(double time) {
+        advance(time, true);
+    }
+
+    /**
+     * Advances the race to {@code time} like {@link #advance}, but leaves
+     * the legs of every robot in the pose of the previous tick.
+     */
+    public void move(double time) {
+        advance(time, false);
+    }
+
+    private void advance(double time, boolean legs) {
+        double dt = time - lastTime;
+        lastTime = time;
+        if (dt < 0) { // the animation time was reset
+            dt = 0;
+        }
+        if (count > ROBOTS_PER_TASK) {
+            POOL.invoke(new Step(0, count, dt, legs));
+        } else {
+            step(0, count, dt, legs);
+        }
+    }
+
+    /**
+     * Poses the legs of robots {@code robots[0]} .. {@code robots[n - 1]}
+     * for their place in the walk cycle.
+     */
+    public void pose(int[] robots, int n) {
+        if (n > ROBOTS_PER_TASK) {
+            POOL.invoke(new Pose(robots, 0, n));
+        } else {
+            pose(robots, 0, n);
+        }
+    }
+
+    /**
+     * Saves the state of robots {@code from} up to {@code to} as the
+     * previous tick and advances them by {@code dt}, posing their legs if
+     * {@code legs} is true.
+     */
+    private void step(int from, int to, double dt, boolean legs) {
+        save(from, to);
+        for (int i = from; i < to; i++) {
+            distance[i] += speed[i] * dt;
+        }
+        for (int i = from; i < to; i++) {
+            speed[i] = Math.abs(speed[i] + (nextDouble(i) - 0.5) / 200);
+        }
+        if (legs) {
+            for (int i = from; i < to; i++) {
+                poseLegs(i);
+            }
+        }
+    }
+
+    private void pose(int[] robots, int from, int to) {
+        for (int k = from; k < to; k++) {
+            poseLegs(robots[k]);
+        }
+    }
+
+    /**
+     * Poses the legs of robot i by interpolating the gait table at the
+     * robot's place in the walk cycle.
+     */
+    private void poseLegs(int i) {
+        double cycle = distance[i] / (STRIDE * WALK_PERIOD);
+        double sample = (cycle - Math.floor(cycle)) * GAIT_SAMPLES;
+        int s = (int) sample;
+        double t = sample - s;
+        int g = 4 * s;
+        int p = i * POSE_SIZE;
+        for (int leg = 0; leg < 4; leg++) {
+            double angle = GAIT[g + leg] + t * (GAIT[g + 4 + leg] - GAIT[g + leg]);
+            pose[p + 2 * leg] = angle;
+            //The lower leg bends back when the upper leg points forward and follows it halfway otherwise
+            pose[p + 2 * leg + 1] = angle < 0 ? -angle : 0.5 * angle;
+        }
+    }
+
+    /**
+     * Makes the current state of all robots the previous tick as well, so
+     * that they are not drawn moving from where they were before they were
+     * placed anew, for example on another track.
+     */
+    public final void settle() {
+        save(0, count);
+    }
+
+    /**
+     * Saves the position, frame and pose of robots {@code from} up to
+     * {@code to} as the previous tick.
+     */
+    private void save(int from, int to) {
+        System.arraycopy(x, from, previousX, from, to - from);
+        System.arraycopy(y, from, previousY, from, to - from);
+        System.arraycopy(z, from, previousZ, from, to - from);
+        System.arraycopy(frame, from * FrameTable.SIZE, previousFrame, from * FrameTable.SIZE, (to - from) * FrameTable.SIZE);
+        System.arraycopy(pose, from * POSE_SIZE, previousPose, from * POSE_SIZE, (to - from) * POSE_SIZE);
+    }
+
+    /**
+     * Sets the render state of every robot to the fraction {@code alpha} of
+     * the way from the previous to the last tick.
+     */
+    public final void interpolate(double alpha) {
+        lerp(previousX, x, renderX, alpha);
+        lerp(previousY, y, renderY, alpha);
+        lerp(previousZ, z, renderZ, alpha);
+        lerp(previousFrame, frame, renderFrame, alpha);
+        lerp(previousPose, pose, renderPose, alpha);
+        for (int f = FrameTable.YAW; f < renderFrame.length; f += FrameTable.SIZE) {
+            //The yaw turns the short way round when it wraps from pi to -pi
+            double turn = frame[f] - previousFrame[f];
+            turn -= 2 * Math.PI * Math.floor((turn + Math.PI) / (2 * Math.PI));
+            renderFrame[f] = previousFrame[f] + alpha * turn;
+        }
+    }
+
+    private static void lerp(double[] from, double[] to, double[] out, double alpha) {
+        for (int k = 0; k < out.length; k++) {
+            out[k] = from[k] + alpha * (to[k] - from[k]);
+        }
+    }
+
+    /**
+     * Returns the next random number of robot i's stream, uniformly
+     * distributed in [0, 1).
+     */
+    private double nextDouble(int i) {
+        random[i] += GOLDEN_GAMMA;
+        return (mix(random[i]) >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * The output function of SplitMix64.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Computes the gait table: every upper leg swings along a sine wave,
+     * starting LEG_PHASE into the walk cycle.
+     */
+    private static double[] gait() {
+        double[] table = new double[4 * (GAIT_SAMPLES + 1)];
+        for (int s = 0; s <= GAIT_SAMPLES; s++) {
+            double phase = WALK_PERIOD * s / GAIT_SAMPLES;
+            for (int leg = 0; leg < 4; leg++) {
+                table[4 * s + leg] = MAX_LEG_ANGLE * Math.sin(2 * Math.PI / WALK_PERIOD * (phase + LEG_PHASE[leg]));
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Task that advances a range of robots, split in halves until a range
+     * is at most ROBOTS_PER_TASK robots.
+     */
+    private final class Step extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final double dt;
+        private final boolean legs;
+
+        Step(int from, int to, double dt, boolean legs) {
+            this.from = from;
+            this.to = to;
+            this.dt = dt;
+            this.legs = legs;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > ROBOTS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Step(from, middle, dt, legs), new Step(middle, to, dt, legs));
+                return;
+            }
+            step(from, to, dt, legs);
+        }
+    }
+
+    /**
+     * Task that poses the legs of a range of a list of robots, split like a
+     * step task.
+     */
+    private final class Pose extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int[] robots;
+        private final int from;
+        private final int to;
+
+        Pose(int[] robots, int from, int to) {
+            this.robots = robots;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > ROBOTS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new Pose(robots, from, middle), new Pose(robots, middle, to));
+                return;
+            }
+            pose(robots, from, to);
+        }
+    }
+
+    /**
+     * Writes the average render position of all robots to {@code out[0]} ..
+     * {@code out[2]}.
+     */
+    public void centroid(double[] out) {
+        double sx = 0;
+        double sy = 0;
+        double sz = 0;
+        for (int i = 0; i < count; i++) {
+            sx += renderX[i];
+            sy += renderY[i];
+            sz += renderZ[i];
+        }
+        out[0] = sx / count;
+        out[1] = sy / count;
+        out[2] = sz / count;
+    }
+}
@@ -0,0 +1,395 @@
+
+import java.util.Arrays;
+
+/**
+ * Dimensions of the robot and triangle meshes of its limbs. Every limb type
+ * (torso, head, upper leg, lower leg and foot) is built once in its own
+ * local coordinates, with the same boxes and cylinders the limbs draw with
+ * the fixed-function pipeline, so that one mesh per limb type can be shared
+ * by all robots. A second, simplified set of meshes approximates every limb
+ * by a single untextured box, for robots that are far away. The vertices of
+ * all meshes are stored in one interleaved float array, the triangles of
+ * every mesh in its own index array.
+ */
+public class RobotGeometry {
+
+    /**
+     * Limb types.
+     */
+    public static final int TORSO = 0;
+    public static final int HEAD = 1;
+    public static final int UPPER_LEG = 2;
+    public static final int LOWER_LEG = 3;
+    public static final int FOOT = 4;
+    public static final int LIMB_TYPES = 5;
+
+    /**
+     * Number of limbs of every type a robot has.
+     */
+    public static final int[] COPIES = {1, 1, 4, 4, 4};
+
+    /**
+     * Number of limbs of a robot. The limbs of a robot are numbered by type,
+     * the legs in the order of {@link RaceSimulation#FORE_LEFT} and the
+     * others, and FIRST_LIMB gives the number of the first limb of every
+     * type.
+     */
+    public static final int LIMBS = 14;
+    public static final int[] FIRST_LIMB = {0, 1, 2, 6, 10};
+
+    /**
+     * The limb hierarchy, flattened in parent order: the type of every limb,
+     * its parent (-1 for the torso, which hangs from the robot's position)
+     * and the pose angle (see {@link RaceSimulation#POSE_SIZE}) that rotates
+     * it around its y-axis, or -1 if it is not posed.
+     */
+    public static final int[] LIMB_TYPE = {
+        TORSO, HEAD,
+        UPPER_LEG, UPPER_LEG, UPPER_LEG, UPPER_LEG,
+        LOWER_LEG, LOWER_LEG, LOWER_LEG, LOWER_LEG,
+        FOOT, FOOT, FOOT, FOOT
+    };
+    public static final int[] PARENT = {-1, 0, 0, 0, 0, 0, 2, 3, 4, 5, 6, 7, 8, 9};
+    public static final int[] POSE_ANGLE = {-1, -1, 0, 2, 4, 6, 1, 3, 5, 7, -1, -1, -1, -1};
+
+    /**
+     * Local origins of the limbs relative to their parent: the torso relative
+     * to the robot's position, the head and the upper legs relative to the
+     * torso, the lower leg relative to the upper leg and the foot relative to
+     * the lower leg.
+     */
+    public static final float TORSO_HEIGHT = 10.2f;
+    public static final float HEAD_OFFSET = 4.4f;
+    public static final float LEGS_OFFSET_X = 2;
+    public static final float LEGS_OFFSET_Y = 1.4f;
+    public static final float UPPER_LEG_LENGTH = 6.6f;
+    public static final float LOWER_LEG_LENGTH = 3.4f;
+
+    /**
+     * Sphere that holds the robot in any pose: its center lies
+     * BOUNDING_HEIGHT above the robot's position.
+     */
+    public static final float BOUNDING_HEIGHT = 6.5f;
+    public static final float BOUNDING_RADIUS = 11.5f;
+
+    /**
+     * Local origin of every limb relative to its parent, as x, y, z.
+     */
+    public static final float[] ORIGIN = {
+        0, 0, TORSO_HEIGHT,
+        HEAD_OFFSET, 0, 0,
+        LEGS_OFFSET_X, LEGS_OFFSET_Y, 0,
+        LEGS_OFFSET_X, -LEGS_OFFSET_Y, 0,
+        -LEGS_OFFSET_X, LEGS_OFFSET_Y, 0,
+        -LEGS_OFFSET_X, -LEGS_OFFSET_Y, 0,
+        0, 0, -UPPER_LEG_LENGTH,
+        0, 0, -UPPER_LEG_LENGTH,
+        0, 0, -UPPER_LEG_LENGTH,
+        0, 0, -UPPER_LEG_LENGTH,
+        0, 0, -LOWER_LEG_LENGTH,
+        0, 0, -LOWER_LEG_LENGTH,
+        0, 0, -LOWER_LEG_LENGTH,
+        0, 0, -LOWER_LEG_LENGTH
+    };
+
+    /**
+     * Texture coordinates of the textured cubes, in the face order right,
+     * front, left, back, bottom, top.
+     */
+    private static final QuadTexMappingCoordinates[] TORSO_MIDDLE = {
+        new QuadTexMappingCoordinates(0, 0.335975, 0.6640625, 0.335975, 0.6640625, 1, 0, 1),
+        new QuadTexMappingCoordinates(0, 0, 1, 0, 1, 0.335975, 0, 0.335975),
+        new QuadTexMappingCoordinates(0.6640625, 0.335975, 0, 0.335975, 0, 1, 0.6640625, 1),
+        new QuadTexMappingCoordinates(0, 0, 1, 0, 1, 0.335975, 0, 0.335975),
+        new QuadTexMappingCoordinates(0, 0, 1, 0, 1, 0.335975, 0, 0.335975),
+        new QuadTexMappingCoordinates(0, 0, 1, 0, 1, 0.335975, 0, 0.335975)
+    };
+    private static final QuadTexMappingCoordinates[] TORSO_FRONT = {
+        new QuadTexMappingCoordinates(0.6640625, 0.335975, 1, 0.335975, 1, 1, 0.6640625, 1),
+        new QuadTexMappingCoordinates(0, 0, 1, 0, 1, 0.335975, 0, 0.335975),
+        new QuadTexMappingCoordinates(1, 0.335975, 0.6640625, 0.335975, 0.6640625, 1, 1, 1),
+        new QuadTexMappingCoordinates(0, 0, 1, 0, 1, 0.335975, 0, 0.335975),
+        new QuadTexMappingCoordinates(0, 0, 1, 0, 1, 0.335975, 0, 0.335975),
+        new QuadTexMappingCoordinates(0, 0, 1, 0, 1, 0.335975, 0, 0.335975)
+    };
+    private static final QuadTexMappingCoordinates[] TORSO_REAR = {
+        new QuadTexMappingCoordinates(1, 0.335975, 0.6640625, 0.335975, 0.6640625, 1, 1, 1),
+        new QuadTexMappingCoordinates(0, 0, 1, 0, 1, 0.335975, 0, 0.335975),
+        new QuadTexMappingCoordinates(0.6640625, 0.335975, 1, 0.335975, 1, 1, 0.6640625, 1),
+        new QuadTexMappingCoordinates(0, 0, 1, 0, 1, 0.335975, 0, 0.335975),
+        new QuadTexMappingCoordinates(0, 0, 1, 0, 1, 0.335975, 0, 0.335975),
+        new QuadTexMappingCoordinates(0, 0, 1, 0, 1, 0.335975, 0, 0.335975)
+    };
+    private static final QuadTexMappingCoordinates[] HEAD_CUBE = {
+        new QuadTexMappingCoordinates(0, 0, 1, 0, 1, 0.421875, 0, 0.421875),
+        new QuadTexMappingCoordinates(0, 0.421875, 1, 0.421875, 1, 1, 0, 1),
+        new QuadTexMappingCoordinates(0, 0, 1, 0, 1, 0.421875, 0, 0.421875),
+        new QuadTexMappingCoordinates(0, 0, 1, 0, 1, 0.421875, 0, 0.421875),
+        new QuadTexMappingCoordinates(0, 0, 1, 0, 1, 0.421875, 0, 0.421875),
+        new QuadTexMappingCoordinates(0, 0, 1, 0, 1, 0.421875, 0, 0.421875)
+    };
+
+    /**
+     * Sets of meshes: the full solid limbs and the simplified boxes.
+     */
+    public static final int SOLID = 0;
+    public static final int BOXES = 1;
+    public static final int MESH_SETS = 2;
+
+    /**
+     * The box that approximates every limb type in the BOXES set, as the
+     * center x, y, z and the size along x, y, z in the limb's local
+     * coordinates. The boxes leave out the neck, the knees and the guns.
+     */
+    public static final float[][] LOD_BOX = {
+        {0.3f, 0, 0.65f, 8.2f, 3.4f, 5.5f},
+        {1.7f, 0, 0, 3.4f, 2.1f, 2.2f},
+        {0, 0, -UPPER_LEG_LENGTH / 2, 1, 0.5f, UPPER_LEG_LENGTH},
+        {0, 0, -LOWER_LEG_LENGTH / 2, 1, 0.5f, LOWER_LEG_LENGTH},
+        {0, 0, -0.2f, 1.7f, 1.7f, 1.6f}
+    };
+
+    /**
+     * Line segments of the stick figure of every limb type, as pairs of
+     * points x, y, z in the limb's local coordinates.
+     */
+    public static final float[][] STICK_LINES = {
+        {
+            -HEAD_OFFSET, 0, 0, HEAD_OFFSET, 0, 0,
+            LEGS_OFFSET_X, 0, 0, LEGS_OFFSET_X, LEGS_OFFSET_Y, 0,
+            LEGS_OFFSET_X, 0, 0, LEGS_OFFSET_X, -LEGS_OFFSET_Y, 0,
+            -LEGS_OFFSET_X, 0, 0, -LEGS_OFFSET_X, LEGS_OFFSET_Y, 0,
+            -LEGS_OFFSET_X, 0, 0, -LEGS_OFFSET_X, -LEGS_OFFSET_Y, 0
+        },
+        {0, 0, 0, 3.4f, 0, 0},
+        {0, 0, 0, 0, 0, -UPPER_LEG_LENGTH},
+        {0, 0, 0, 0, 0, -LOWER_LEG_LENGTH},
+        {-0.5f, 0, 0, 0.5f, 0, 0}
+    };
+
+    /**
+     * Corners of the faces of a unit cube and their normals, in the order
+     * of the texture coordinates.
+     */
+    private static final float[][][] CUBE_FACES = {
+        {{-0.5f, -0.5f, -0.5f}, {0.5f, -0.5f, -0.5f}, {0.5f, -0.5f, 0.5f}, {-0.5f, -0.5f, 0.5f}},
+        {{0.5f, -0.5f, -0.5f}, {0.5f, 0.5f, -0.5f}, {0.5f, 0.5f, 0.5f}, {0.5f, -0.5f, 0.5f}},
+        {{0.5f, 0.5f, -0.5f}, {-0.5f, 0.5f, -0.5f}, {-0.5f, 0.5f, 0.5f}, {0.5f, 0.5f, 0.5f}},
+        {{-0.5f, 0.5f, -0.5f}, {-0.5f, 0.5f, 0.5f}, {-0.5f, -0.5f, 0.5f}, {-0.5f, -0.5f, -0.5f}},
+        {{-0.5f, -0.5f, -0.5f}, {0.5f, -0.5f, -0.5f}, {0.5f, 0.5f, -0.5f}, {-0.5f, 0.5f, -0.5f}},
+        {{0.5f, -0.5f, 0.5f}, {0.5f, 0.5f, 0.5f}, {-0.5f, 0.5f, 0.5f}, {-0.5f, -0.5f, 0.5f}}
+    };
+    private static final float[][] CUBE_NORMALS = {
+        {0, -1, 0}, {1, 0, 0}, {0, 1, 0}, {-1, 0, 0}, {0, 0, -1}, {0, 0, 1}
+    };
+
+    /**
+     * Number of floats per vertex: x, y, z, the normal, s, t and 1 if the
+     * vertex is textured or 0 if it is not.
+     */
+    public static final int FLOATS_PER_VERTEX = 9;
+    public static final int POSITION = 0;
+    public static final int NORMAL = 3;
+    public static final int TEXCOORD = 6;
+    public static final int TEXTURED = 8;
+
+    /**
+     * Interleaved vertex data, only the first vertexCount vertices are used.
+     */
+    private float[] vertices = new float[256 * FLOATS_PER_VERTEX];
+    private int vertexCount = 0;
+
+    /**
+     * Triangles of every limb type in every mesh set, as indices in the
+     * vertex array.
+     */
+    private final int[][][] indices = new int[MESH_SETS][LIMB_TYPES][];
+
+    /**
+     * Triangles of the limb type that is being built.
+     */
+    private int[] building = new int[256];
+    private int indexCount = 0;
+
+    /**
+     * Builds the meshes of all limb types.
+     */
+    public RobotGeometry() {
+        float[] m = new float[Matrix4.SIZE];
+
+        //The torso consists of three blocks and the neck
+        place(m, 0, 0, 0.65f);
+        Matrix4.scale(m, 0, 3.4f, 3.4f, 5.5f);
+        box(m, TORSO_MIDDLE);
+        place(m, 2.75f, 0, -0.4f);
+        Matrix4.scale(m, 0, 2.1f, 2.1f, 3.4f);
+        box(m, TORSO_FRONT);
+        place(m, -2.75f, 0, -0.4f);
+        Matrix4.scale(m, 0, 2.1f, 2.1f, 3.4f);
+        box(m, TORSO_REAR);
+        place(m, 3.8f, 0, 0);
+        Matrix4.rotate(m, 0, 90, Matrix4.Y);
+        cylinder(m, 0.95f, 1.2f, 10);
+        finish(SOLID, TORSO);
+
+        //The head and its two guns
+        place(m, 1.7f, 0, 0);
+        Matrix4.scale(m, 0, 3.4f, 2.1f, 2.2f);
+        box(m, HEAD_CUBE);
+        for (int side = -1; side <= 1; side += 2) {
+            place(m, 0, side * 0.7f, -1.2f);
+            Matrix4.rotate(m, 0, 90, Matrix4.Y);
+            cylinder(m, 0.15f, 4.3f, 6);
+        }
+        finish(SOLID, HEAD);
+
+        place(m, 0, 0, -UPPER_LEG_LENGTH / 2);
+        Matrix4.scale(m, 0, 1, 0.5f, UPPER_LEG_LENGTH);
+        box(m, null);
+        finish(SOLID, UPPER_LEG);
+
+        //The knee joint and the lower leg
+        place(m, 0, 0.3f, 0);
+        Matrix4.rotate(m, 0, 90, Matrix4.X);
+        cylinder(m, 0.6f, 0.6f, 10);
+        place(m, 0, 0, -LOWER_LEG_LENGTH / 2);
+        Matrix4.scale(m, 0, 1, 0.5f, LOWER_LEG_LENGTH);
+        box(m, null);
+        finish(SOLID, LOWER_LEG);
+
+        //A large cylinder at the base and a smaller cylinder on top of that
+        place(m, 0, 0, 0.6f);
+        cylinder(m, 0.7f, -0.8f, 15);
+        place(m, 0, 0, -0.2f);
+        cylinder(m, 1, -0.8f, 15);
+        finish(SOLID, FOOT);
+
+        for (int type = 0; type < LIMB_TYPES; type++) {
+            float[] box = LOD_BOX[type];
+            place(m, box[0], box[1], box[2]);
+            Matrix4.scale(m, 0, box[3], box[4], box[5]);
+            box(m, null);
+            finish(BOXES, type);
+        }
+    }
+
+    /**
+     * Sets {@code m} to a translation.
+     */
+    private static void place(float[] m, float x, float y, float z) {
+        Matrix4.identity(m, 0);
+        Matrix4.translate(m, 0, x, y, z);
+    }
+
+    /**
+     * Adds the unit cube transformed by {@code m}, textured with the given
+     * coordinates or untextured if they are null.
+     */
+    private void box(float[] m, QuadTexMappingCoordinates[] mapping) {
+        for (int f = 0; f < 6; f++) {
+            int first = vertexCount;
+            float[] n = CUBE_NORMALS[f];
+            for (int c = 0; c < 4; c++) {
+                float[] p = CUBE_FACES[f][c];
+                double[] st = mapping == null ? null
+                        : c == 0 ? mapping[f].p1 : c == 1 ? mapping[f].p2 : c == 2 ? mapping[f].p3 : mapping[f].p4;
+                vertex(m, p[0], p[1], p[2], n[0], n[1], n[2], st);
+            }
+            quad(first, first + 1, first + 2, first + 3);
+        }
+    }
+
+    /**
+     * Adds a closed cylinder like glutSolidCylinder, transformed by
+     * {@code m}: its base is centered at the origin and it extends
+     * {@code height} along the z-axis.
+     */
+    private void cylinder(float[] m, float radius, float height, int slices) {
+        float up = Math.signum(height);
+        int side = vertexCount;
+        for (int k = 0; k <= slices; k++) {
+            double angle = 2 * Math.PI * k / slices;
+            float cos = (float) Math.cos(angle);
+            float sin = (float) Math.sin(angle);
+            vertex(m, radius * cos, radius * sin, 0, cos, sin, 0, null);
+            vertex(m, radius * cos, radius * sin, height, cos, sin, 0, null);
+        }
+        for (int k = 0; k < slices; k++) {
+            quad(side + 2 * k, side + 2 * k + 2, side + 2 * k + 3, side + 2 * k + 1);
+        }
+
+        for (int cap = 0; cap < 2; cap++) {
+            float z = cap * height;
+            float nz = cap == 0 ? -up : up;
+            int center = vertexCount;
+            vertex(m, 0, 0, z, 0, 0, nz, null);
+            for (int k = 0; k <= slices; k++) {
+                double angle = 2 * Math.PI * k / slices;
+                vertex(m, radius * (float) Math.cos(angle), radius * (float) Math.sin(angle), z, 0, 0, nz, null);
+            }
+            for (int k = 0; k < slices; k++) {
+                triangle(center, center + 1 + k, center + 2 + k);
+            }
+        }
+    }
+
+    /**
+     * Adds a vertex transformed by {@code m}, with texture coordinate
+     * {@code st} or untextured if it is null.
+     */
+    private void vertex(float[] m, float x, float y, float z, float nx, float ny, float nz, double[] st) {
+        if ((vertexCount + 1) * FLOATS_PER_VERTEX > vertices.length) {
+            vertices = Arrays.copyOf(vertices, 2 * vertices.length);
+        }
+        int v = vertexCount * FLOATS_PER_VERTEX;
+        Matrix4.transformPoint(m, 0, x, y, z, vertices, v + POSITION);
+        Matrix4.transformNormal(m, 0, nx, ny, nz, vertices, v + NORMAL);
+        vertices[v + TEXCOORD] = st == null ? 0 : (float) st[0];
+        vertices[v + TEXCOORD + 1] = st == null ? 0 : (float) st[1];
+        vertices[v + TEXTURED] = st == null ? 0 : 1;
+        vertexCount++;
+    }
+
+    private void quad(int a, int b, int c, int d) {
+        triangle(a, b, c);
+        triangle(a, c, d);
+    }
+
+    private void triangle(int a, int b, int c) {
+        if (indexCount + 3 > building.length) {
+            building = Arrays.copyOf(building, 2 * building.length);
+        }
+        building[indexCount++] = a;
+        building[indexCount++] = b;
+        building[indexCount++] = c;
+    }
+
+    /**
+     * Stores the triangles added since the previous mesh as the mesh of the
+     * given limb type in the given set.
+     */
+    private void finish(int set, int type) {
+        indices[set][type] = Arrays.copyOf(building, indexCount);
+        indexCount = 0;
+    }
+
+    /**
+     * Returns the interleaved vertices of all limb types, the array is
+     * exactly getVertexCount() vertices long.
+     */
+    public float[] getVertices() {
+        return Arrays.copyOf(vertices, vertexCount * FLOATS_PER_VERTEX);
+    }
+
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    /**
+     * Returns the triangles of the given limb type in the given mesh set, as
+     * indices in the vertex array.
+     */
+    public int[] getIndices(int set, int type) {
+        return indices[set][type];
+    }
+}
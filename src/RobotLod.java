@@ -0,0 +1,148 @@
+import robotrace.Vector;
+
+/**
+ * Level of detail of every robot of a race, chosen by its distance to the
+ * eye. Nearby robots are drawn with the full meshes, robots further away
+ * with one box per limb, then as stick figures and finally as billboard
+ * impostors. A robot only moves to a coarser level when it is HYSTERESIS
+ * beyond the distance of that level, and back to a finer level when it is
+ * HYSTERESIS within it, so robots near a boundary do not flicker between
+ * two levels. A robot can skip levels when the camera jumps.
+ *
+ * Every frame the robots are sorted into one list per level, which the
+ * renderer draws as a batch. Robots whose bounding sphere lies outside the
+ * view frustum are left out of the lists, and keep their level.
+ */
+public class RobotLod {
+
+    /**
+     * Levels of detail, from fine to coarse.
+     */
+    public static final int FULL = 0;
+    public static final int BOX = 1;
+    public static final int STICK = 2;
+    public static final int IMPOSTOR = 3;
+    public static final int LEVELS = 4;
+
+    /**
+     * Factor all distances are multiplied with, can be changed with the
+     * system property robotrace.lodscale. A scale of 0 draws every robot as
+     * an impostor.
+     */
+    public static final double SCALE = Double.parseDouble(System.getProperty("robotrace.lodscale", "1"));
+
+    /**
+     * Distances beyond which a robot is drawn at the next coarser level.
+     */
+    public static final double[] DISTANCE = {80 * SCALE, 200 * SCALE, 350 * SCALE};
+
+    /**
+     * Fraction of a distance a robot has to pass it by before it changes
+     * level.
+     */
+    public static final double HYSTERESIS = 0.1;
+
+    private static final double[] COARSER = new double[LEVELS - 1];
+    private static final double[] FINER = new double[LEVELS - 1];
+
+    static {
+        // squared, so the distances to the eye need no square root
+        for (int l = 0; l < LEVELS - 1; l++) {
+            COARSER[l] = Math.pow(DISTANCE[l] * (1 + HYSTERESIS), 2);
+            FINER[l] = Math.pow(DISTANCE[l] * (1 - HYSTERESIS), 2);
+        }
+    }
+
+    private int[] level = new int[0];
+    private boolean[] visible = new boolean[0];
+    private int[][] members = new int[LEVELS][0];
+    private final int[] counts = new int[LEVELS];
+
+    /**
+     * Updates the levels of all robots of the race for their render
+     * position and the given eye, and sorts the robots inside the frustum
+     * into the lists of their level.
+     */
+    public void update(RaceSimulation race, Vector eye, Frustum frustum) {
+        int count = race.count;
+        boolean placed = level.length == count;
+        if (!placed) {
+            level = new int[count];
+            visible = new boolean[count];
+            for (int l = 0; l < LEVELS; l++) {
+                members[l] = new int[count];
+            }
+        }
+        for (int l = 0; l < LEVELS; l++) {
+            counts[l] = 0;
+        }
+        double ex = eye.x();
+        double ey = eye.y();
+        double ez = eye.z();
+        for (int i = 0; i < count; i++) {
+            double dx = race.renderX[i] - ex;
+            double dy = race.renderY[i] - ey;
+            double dz = race.renderZ[i] - ez;
+            double d2 = dx * dx + dy * dy + dz * dz;
+            int l;
+            if (placed) {
+                l = level[i];
+                while (l < IMPOSTOR && d2 > COARSER[l]) {
+                    l++;
+                }
+                while (l > FULL && d2 < FINER[l - 1]) {
+                    l--;
+                }
+            } else {
+                // a robot that is seen for the first time takes its level without hysteresis
+                l = FULL;
+                while (l < IMPOSTOR && d2 > DISTANCE[l] * DISTANCE[l]) {
+                    l++;
+                }
+            }
+            level[i] = l;
+            visible[i] = frustum.sphereVisible(Frustum.ROBOTS, race.renderX[i], race.renderY[i],
+                    race.renderZ[i] + RobotGeometry.BOUNDING_HEIGHT, RobotGeometry.BOUNDING_RADIUS);
+            if (visible[i]) {
+                members[l][counts[l]++] = i;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of robots that have a level, 0 before the first
+     * update.
+     */
+    public int size() {
+        return level.length;
+    }
+
+    /**
+     * Returns the level of robot i.
+     */
+    public int level(int i) {
+        return level[i];
+    }
+
+    /**
+     * Returns true if robot i was inside the frustum.
+     */
+    public boolean isVisible(int i) {
+        return visible[i];
+    }
+
+    /**
+     * Returns the robots at the given level, the first
+     * {@link #count count(level)} elements are used.
+     */
+    public int[] members(int level) {
+        return members[level];
+    }
+
+    /**
+     * Returns the number of robots at the given level.
+     */
+    public int count(int level) {
+        return counts[level];
+    }
+}
@@ -0,0 +1,105 @@
+import com.jogamp.common.nio.Buffers;
+import com.jogamp.opengl.util.texture.Texture;
+import javax.media.opengl.GL2;
+import static javax.media.opengl.GL2.*;
+
+/**
+ * The textured robot parts, the torso and the head, for drawing with the
+ * fixed-function pipeline. Their meshes from {@link RobotGeometry}, with the
+ * texture coordinates of every face baked in, are uploaded once to a vertex
+ * buffer object and an element buffer object that holds the triangles of
+ * every part after each other. Drawing a part is a texture bind and one
+ * glDrawElements call, without allocating anything.
+ */
+public class RobotPartAtlas {
+
+    /**
+     * The parts in the element buffer.
+     */
+    public static final int[] PARTS = {RobotGeometry.TORSO, RobotGeometry.HEAD};
+
+    private final RobotGeometry geometry = new RobotGeometry();
+
+    /**
+     * First index and number of indices of every limb type in the element
+     * buffer, only set for the parts.
+     */
+    private final int[] firstIndex = new int[RobotGeometry.LIMB_TYPES];
+    private final int[] indexCount = new int[RobotGeometry.LIMB_TYPES];
+
+    /**
+     * Names of the buffer objects, 0 as long as they are not uploaded.
+     */
+    private int vbo = 0;
+    private int ibo = 0;
+
+    /**
+     * Copies the vertices and the triangles of the parts to buffer objects.
+     */
+    public void upload(GL2 gl) {
+        int[] names = new int[2];
+        gl.glGenBuffers(2, names, 0);
+        vbo = names[0];
+        ibo = names[1];
+        float[] vertices = geometry.getVertices();
+        gl.glBindBuffer(GL_ARRAY_BUFFER, vbo);
+        gl.glBufferData(GL_ARRAY_BUFFER, vertices.length * Buffers.SIZEOF_FLOAT,
+                Buffers.newDirectFloatBuffer(vertices), GL_STATIC_DRAW);
+        gl.glBindBuffer(GL_ARRAY_BUFFER, 0);
+
+        int total = 0;
+        for (int type : PARTS) {
+            firstIndex[type] = total;
+            indexCount[type] = geometry.getIndices(RobotGeometry.SOLID, type).length;
+            total += indexCount[type];
+        }
+        int[] indices = new int[total];
+        for (int type : PARTS) {
+            System.arraycopy(geometry.getIndices(RobotGeometry.SOLID, type), 0, indices, firstIndex[type], indexCount[type]);
+        }
+        gl.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, ibo);
+        gl.glBufferData(GL_ELEMENT_ARRAY_BUFFER, total * Buffers.SIZEOF_INT,
+                Buffers.newDirectIntBuffer(indices), GL_STATIC_DRAW);
+        gl.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, 0);
+    }
+
+    /**
+     * Draws the part of the given limb type with the given texture in the
+     * current modelview coordinates, uploading the parts first if that did
+     * not happen yet.
+     */
+    public void draw(GL2 gl, int type, Texture texture) {
+        if (vbo == 0) {
+            upload(gl);
+        }
+        texture.bind(gl);
+        int stride = RobotGeometry.FLOATS_PER_VERTEX * Buffers.SIZEOF_FLOAT;
+        gl.glBindBuffer(GL_ARRAY_BUFFER, vbo);
+        gl.glVertexPointer(3, GL_FLOAT, stride, RobotGeometry.POSITION * Buffers.SIZEOF_FLOAT);
+        gl.glNormalPointer(GL_FLOAT, stride, RobotGeometry.NORMAL * Buffers.SIZEOF_FLOAT);
+        gl.glTexCoordPointer(2, GL_FLOAT, stride, RobotGeometry.TEXCOORD * Buffers.SIZEOF_FLOAT);
+        gl.glEnableClientState(GL_VERTEX_ARRAY);
+        gl.glEnableClientState(GL_NORMAL_ARRAY);
+        gl.glEnableClientState(GL_TEXTURE_COORD_ARRAY);
+        gl.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, ibo);
+        gl.glDrawElements(GL_TRIANGLES, indexCount[type], GL_UNSIGNED_INT,
+                (long) firstIndex[type] * Buffers.SIZEOF_INT);
+        gl.glDisableClientState(GL_TEXTURE_COORD_ARRAY);
+        gl.glDisableClientState(GL_NORMAL_ARRAY);
+        gl.glDisableClientState(GL_VERTEX_ARRAY);
+        gl.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, 0);
+        gl.glBindBuffer(GL_ARRAY_BUFFER, 0);
+    }
+
+    /**
+     * Deletes the buffer objects, the parts are uploaded again when they are
+     * drawn next.
+     */
+    public void dispose(GL2 gl) {
+        if (vbo != 0) {
+            gl.glDeleteBuffers(2, new int[]{vbo, ibo}, 0);
+            vbo = 0;
+            ibo = 0;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+
+/**
+ * Clock that runs the race at a fixed rate, independent of the frame rate.
+ * Every frame the real time since the previous frame, measured with
+ * System.nanoTime, is added to an accumulator, and the race is advanced by
+ * one tick of TICK seconds for every whole tick in it. What is left of the
+ * accumulator is the fraction of a tick the display is ahead of the last
+ * tick, which the renderer uses to interpolate between the last two ticks.
+ *
+ * The simulated time is the number of ticks times TICK, so it is as precise
+ * after days of running as it is at the start.
+ */
+public class SimulationClock {
+
+    /**
+     * Number of ticks per second, can be changed with the system property
+     * robotrace.tickrate.
+     */
+    public static final int RATE = Math.max(1, Integer.getInteger("robotrace.tickrate", 60));
+
+    /**
+     * Length of a tick in seconds.
+     */
+    public static final double TICK = 1.0 / RATE;
+
+    /**
+     * Largest number of ticks that are run for one frame. After a longer
+     * stall the race falls behind the real time instead of freezing the
+     * display while it catches up.
+     */
+    public static final int MAX_TICKS_PER_FRAME = 8;
+
+    private long lastNanos = System.nanoTime();
+    private double accumulator = 0;
+    private long ticks = 0;
+    private int ticksThisFrame = 0;
+
+    /**
+     * Starts a frame: adds the real time since the previous frame to the
+     * accumulator.
+     */
+    public void update() {
+        long now = System.nanoTime();
+        accumulator += (now - lastNanos) * 1e-9;
+        lastNanos = now;
+        ticksThisFrame = 0;
+    }
+
+    /**
+     * Takes one tick from the accumulator and returns true if a tick is due
+     * for this frame, and returns false otherwise. When more ticks are due
+     * than MAX_TICKS_PER_FRAME, the rest of them are dropped.
+     */
+    public boolean tick() {
+        if (accumulator < TICK) {
+            return false;
+        }
+        if (ticksThisFrame == MAX_TICKS_PER_FRAME) {
+            accumulator %= TICK;
+            return false;
+        }
+        accumulator -= TICK;
+        ticks++;
+        ticksThisFrame++;
+        return true;
+    }
+
+    /**
+     * Returns the simulated time of the last tick, in seconds.
+     */
+    public double time() {
+        return ticks * TICK;
+    }
+
+    /**
+     * Returns the fraction of a tick, from 0 up to 1, that the display is
+     * ahead of the last tick.
+     */
+    public double alpha() {
+        return accumulator / TICK;
+    }
+}
@@ -0,0 +1,114 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+/**
+ * Definition of a terrain as it is read from a terrain file: a name, the
+ * height multiplier, the periods and the terrain function. See
+ * terrains/hills.terrain for the file format and {@link TerrainFunction}
+ * for the expressions.
+ */
+public class TerrainDefinition {
+
+    /**
+     * Folder (relative to this class) that holds the terrain files.
+     */
+    public static final String FOLDER = "terrains/";
+
+    /**
+     * Height multiplier and period of a terrain whose file does not give
+     * them, the ones of the built-in terrain.
+     */
+    public static final float DEFAULT_AMPLITUDE = 20;
+    public static final float DEFAULT_PERIOD = 400f / 10;
+
+    public final String name;
+    public final float amplitude;
+    public final float periodX;
+    public final float periodY;
+    public final TerrainFunction function;
+
+    public TerrainDefinition(String name, float amplitude, float periodX, float periodY, TerrainFunction function) {
+        this.name = name;
+        this.amplitude = amplitude;
+        this.periodX = periodX;
+        this.periodY = periodY;
+        this.function = function;
+    }
+
+    /**
+     * Reads the terrain file with the given name: a file on disk if there is
+     * one at that path, so that terrains can be tried without rebuilding,
+     * and otherwise the file in the terrain folder.
+     */
+    public static TerrainDefinition load(String file) throws IOException {
+        String name = file;
+        float amplitude = DEFAULT_AMPLITUDE;
+        float periodX = DEFAULT_PERIOD;
+        float periodY = DEFAULT_PERIOD;
+        TerrainFunction function = null;
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(open(file), "UTF-8"));
+        try {
+            int lineNr = 0;
+            String raw;
+            while ((raw = reader.readLine()) != null) {
+                lineNr++;
+                int comment = raw.indexOf('#');
+                String line = (comment < 0 ? raw : raw.substring(0, comment)).trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] words = line.split("\\s+");
+                if (words[0].equals("name")) {
+                    name = line.substring(4).trim();
+                } else if (words[0].equals("height")) {
+                    try {
+                        function = new TerrainFunction(line.substring(6).trim());
+                    } catch (IllegalArgumentException e) {
+                        throw new IOException(file + ":" + lineNr + ": " + e.getMessage() + " of the height");
+                    }
+                } else if (words[0].equals("amplitude") && words.length == 2) {
+                    amplitude = number(file, lineNr, words[1]);
+                } else if (words[0].equals("period") && (words.length == 2 || words.length == 3)) {
+                    periodX = number(file, lineNr, words[1]);
+                    periodY = number(file, lineNr, words[words.length - 1]);
+                    if (periodX <= 0 || periodY <= 0) {
+                        throw new IOException(file + ":" + lineNr + ": a period must be positive");
+                    }
+                } else {
+                    throw new IOException(file + ":" + lineNr + ": unknown setting " + line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        if (function == null) {
+            throw new IOException(file + ": a terrain needs a height");
+        }
+        return new TerrainDefinition(name, amplitude, periodX, periodY, function);
+    }
+
+    private static float number(String file, int lineNr, String word) throws IOException {
+        try {
+            return Float.parseFloat(word);
+        } catch (NumberFormatException e) {
+            throw new IOException(file + ":" + lineNr + ": " + word + " is not a number");
+        }
+    }
+
+    private static InputStream open(String file) throws IOException {
+        if (new File(file).isFile()) {
+            return new FileInputStream(file);
+        }
+        InputStream in = TerrainDefinition.class.getResourceAsStream(FOLDER + file);
+        if (in == null) {
+            throw new IOException("Terrain file " + file + " not found");
+        }
+        return in;
+    }
+}
@@ -0,0 +1,251 @@
+import com.jogamp.common.nio.Buffers;
+import javax.media.opengl.GL2;
+import static javax.media.opengl.GL2.*;
+
+/**
+ * Heightfield of the terrain as an indexed triangle mesh. The heights, the
+ * 1D texture coordinates and the normals of the grid points are computed
+ * once and uploaded to a vertex buffer object (GL_T2F_N3F_V3F, with the 1D
+ * texture coordinate as s), and the triangles to an element buffer object.
+ * A mesh is built for one set of terrain parameters, and has to be built
+ * anew when they change.
+ *
+ * The triangles are stored tile by tile, TILE_SEGMENTS by TILE_SEGMENTS
+ * segments, each tile with its bounding box. Tiles outside the view frustum
+ * are skipped and the runs of consecutive visible tiles are drawn with one
+ * glDrawElements call each, so a terrain that is entirely in view costs a
+ * single call.
+ */
+public class TerrainMesh {
+
+    /**
+     * Function that gives the elevation of the terrain, from -1 to 1, at a
+     * point in period units.
+     */
+    public interface Heights {
+
+        float heightAt(float x, float y);
+
+        /**
+         * Stores the elevations at the {@code n} points ({@code x},
+         * {@code y} + j {@code dy}) of a row in {@code out}, starting at
+         * {@code offset}. {@code scratch} holds at least {@code n} floats
+         * that may be overwritten, so that evaluating a row allocates
+         * nothing. The elevations may differ slightly from {@link #heightAt}
+         * when a faster approximation is used.
+         */
+        void heightsAt(float x, float y, float dy, int n, float[] out, int offset, float[] scratch);
+    }
+
+    /**
+     * Number of segments along each side of a tile.
+     */
+    public static final int TILE_SEGMENTS = 8;
+
+    /**
+     * Number of floats per vertex: s, t, the normal, x, y, z.
+     */
+    public static final int FLOATS_PER_VERTEX = 8;
+
+    /**
+     * The parameters the mesh was built for.
+     */
+    private final Heights heights;
+    private final int segmentsX;
+    private final int segmentsY;
+    private final float widthX;
+    private final float widthY;
+    private final float periodX;
+    private final float periodY;
+    private final float amplitude;
+    private final float shift;
+
+    private final float[] vertices;
+    private final int[] indices;
+
+    /**
+     * First index and index count of every tile, and its bounding box as
+     * minimum x, y, z and maximum x, y, z.
+     */
+    private final int[] tileFirst;
+    private final int[] tileCount;
+    private final float[] tileBounds;
+    private final int tiles;
+
+    /**
+     * Names of the buffer objects, 0 as long as they are not uploaded.
+     */
+    private int vbo = 0;
+    private int ibo = 0;
+
+    /**
+     * Builds the mesh of a terrain of {@code segmentsX} by {@code segmentsY}
+     * points spread over {@code widthX} by {@code widthY} units around the
+     * origin. The height at a point is {@code heights} at the point divided
+     * by the periods, times the amplitude, minus the shift; the whole
+     * terrain lies 5 units lower so that the track is a bit elevated above
+     * it.
+     */
+    public TerrainMesh(Heights heights, int segmentsX, int segmentsY, float widthX, float widthY,
+            float periodX, float periodY, float amplitude, float shift) {
+        this.heights = heights;
+        this.segmentsX = segmentsX;
+        this.segmentsY = segmentsY;
+        this.widthX = widthX;
+        this.widthY = widthY;
+        this.periodX = periodX;
+        this.periodY = periodY;
+        this.amplitude = amplitude;
+        this.shift = shift;
+
+        float dx = widthX / segmentsX;
+        float dy = widthY / segmentsY;
+        float[] height = new float[segmentsX * segmentsY];
+        float[] scratch = new float[segmentsY];
+        for (int i = 0; i < segmentsX; i++) {
+            heights.heightsAt(i * dx / periodX, 0, dy / periodY, segmentsY, height, i * segmentsY, scratch);
+        }
+
+        vertices = new float[segmentsX * segmentsY * FLOATS_PER_VERTEX];
+        for (int i = 0; i < segmentsX; i++) {
+            for (int j = 0; j < segmentsY; j++) {
+                float h = height[i * segmentsY + j];
+                // the normal follows from the slopes between the neighbouring points
+                int left = Math.max(i - 1, 0);
+                int right = Math.min(i + 1, segmentsX - 1);
+                int down = Math.max(j - 1, 0);
+                int up = Math.min(j + 1, segmentsY - 1);
+                float slopeX = (height[right * segmentsY + j] - height[left * segmentsY + j]) * amplitude / ((right - left) * dx);
+                float slopeY = (height[i * segmentsY + up] - height[i * segmentsY + down]) * amplitude / ((up - down) * dy);
+                float length = (float) Math.sqrt(slopeX * slopeX + slopeY * slopeY + 1);
+
+                int v = (i * segmentsY + j) * FLOATS_PER_VERTEX;
+                vertices[v] = h / 2 + 0.5f;
+                vertices[v + 1] = 0;
+                vertices[v + 2] = -slopeX / length;
+                vertices[v + 3] = -slopeY / length;
+                vertices[v + 4] = 1 / length;
+                vertices[v + 5] = i * dx - widthX / 2;
+                vertices[v + 6] = j * dy - widthY / 2;
+                vertices[v + 7] = h * amplitude - shift - 5;
+            }
+        }
+
+        // every square between four points is two triangles, stored tile by tile
+        int tilesX = (segmentsX - 1 + TILE_SEGMENTS - 1) / TILE_SEGMENTS;
+        int tilesY = (segmentsY - 1 + TILE_SEGMENTS - 1) / TILE_SEGMENTS;
+        tiles = tilesX * tilesY;
+        tileFirst = new int[tiles];
+        tileCount = new int[tiles];
+        tileBounds = new float[6 * tiles];
+        indices = new int[6 * (segmentsX - 1) * (segmentsY - 1)];
+        int n = 0;
+        int tile = 0;
+        for (int tileX = 0; tileX < segmentsX - 1; tileX += TILE_SEGMENTS) {
+            int endX = Math.min(tileX + TILE_SEGMENTS, segmentsX - 1);
+            for (int tileY = 0; tileY < segmentsY - 1; tileY += TILE_SEGMENTS, tile++) {
+                int endY = Math.min(tileY + TILE_SEGMENTS, segmentsY - 1);
+                tileFirst[tile] = n;
+                float minZ = Float.MAX_VALUE;
+                float maxZ = -Float.MAX_VALUE;
+                for (int i = tileX; i < endX; i++) {
+                    for (int j = tileY; j < endY; j++) {
+                        int a = i * segmentsY + j;
+                        int b = (i + 1) * segmentsY + j;
+                        indices[n++] = a;
+                        indices[n++] = b;
+                        indices[n++] = b + 1;
+                        indices[n++] = a;
+                        indices[n++] = b + 1;
+                        indices[n++] = a + 1;
+                    }
+                }
+                for (int i = tileX; i <= endX; i++) {
+                    for (int j = tileY; j <= endY; j++) {
+                        float z = vertices[(i * segmentsY + j) * FLOATS_PER_VERTEX + 7];
+                        minZ = Math.min(minZ, z);
+                        maxZ = Math.max(maxZ, z);
+                    }
+                }
+                tileCount[tile] = n - tileFirst[tile];
+                tileBounds[6 * tile] = tileX * dx - widthX / 2;
+                tileBounds[6 * tile + 1] = tileY * dy - widthY / 2;
+                tileBounds[6 * tile + 2] = minZ;
+                tileBounds[6 * tile + 3] = endX * dx - widthX / 2;
+                tileBounds[6 * tile + 4] = endY * dy - widthY / 2;
+                tileBounds[6 * tile + 5] = maxZ;
+            }
+        }
+    }
+
+    /**
+     * Returns true if this mesh was built for the given parameters.
+     */
+    public boolean isBuiltFor(Heights heights, int segmentsX, int segmentsY, float widthX, float widthY,
+            float periodX, float periodY, float amplitude, float shift) {
+        return this.heights == heights && this.segmentsX == segmentsX && this.segmentsY == segmentsY
+                && this.widthX == widthX && this.widthY == widthY && this.periodX == periodX
+                && this.periodY == periodY && this.amplitude == amplitude && this.shift == shift;
+    }
+
+    /**
+     * Copies the vertices and triangles to buffer objects.
+     */
+    public void upload(GL2 gl) {
+        int[] names = new int[2];
+        gl.glGenBuffers(2, names, 0);
+        vbo = names[0];
+        ibo = names[1];
+        gl.glBindBuffer(GL_ARRAY_BUFFER, vbo);
+        gl.glBufferData(GL_ARRAY_BUFFER, vertices.length * Buffers.SIZEOF_FLOAT,
+                Buffers.newDirectFloatBuffer(vertices), GL_STATIC_DRAW);
+        gl.glBindBuffer(GL_ARRAY_BUFFER, 0);
+        gl.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, ibo);
+        gl.glBufferData(GL_ELEMENT_ARRAY_BUFFER, indices.length * Buffers.SIZEOF_INT,
+                Buffers.newDirectIntBuffer(indices), GL_STATIC_DRAW);
+        gl.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, 0);
+    }
+
+    /**
+     * Draws the tiles inside the frustum with the currently bound texture,
+     * uploading the mesh first if that did not happen yet.
+     */
+    public void draw(GL2 gl, Frustum frustum) {
+        if (vbo == 0) {
+            upload(gl);
+        }
+        gl.glBindBuffer(GL_ARRAY_BUFFER, vbo);
+        gl.glInterleavedArrays(GL_T2F_N3F_V3F, 0, 0);
+        gl.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, ibo);
+        int run = -1;
+        for (int t = 0; t <= tiles; t++) {
+            boolean visible = t < tiles && frustum.boxVisible(Frustum.TERRAIN,
+                    tileBounds[6 * t], tileBounds[6 * t + 1], tileBounds[6 * t + 2],
+                    tileBounds[6 * t + 3], tileBounds[6 * t + 4], tileBounds[6 * t + 5]);
+            if (visible && run < 0) {
+                run = t;
+            } else if (!visible && run >= 0) {
+                int count = tileFirst[t - 1] + tileCount[t - 1] - tileFirst[run];
+                gl.glDrawElements(GL_TRIANGLES, count, GL_UNSIGNED_INT, (long) tileFirst[run] * Buffers.SIZEOF_INT);
+                run = -1;
+            }
+        }
+        gl.glDisableClientState(GL_TEXTURE_COORD_ARRAY);
+        gl.glDisableClientState(GL_NORMAL_ARRAY);
+        gl.glDisableClientState(GL_VERTEX_ARRAY);
+        gl.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, 0);
+        gl.glBindBuffer(GL_ARRAY_BUFFER, 0);
+    }
+
+    /**
+     * Deletes the buffer objects, the mesh is uploaded again when it is
+     * drawn next.
+     */
+    public void dispose(GL2 gl) {
+        if (vbo != 0) {
+            gl.glDeleteBuffers(2, new int[]{vbo, ibo}, 0);
+            vbo = 0;
+            ibo = 0;
+        }
+    }
+}
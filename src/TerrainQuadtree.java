@@ -0,0 +1,519 @@
+import com.jogamp.common.nio.Buffers;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import javax.media.opengl.GL2;
+import robotrace.Vector;
+import static javax.media.opengl.GL2.*;
+
+/**
+ * Terrain of a large world, split in chunks that are organised in a
+ * quadtree. The root chunk covers the whole square world, and every chunk
+ * has four children that cover its quarters, down to chunks whose segments
+ * are at most LEAF_SEGMENT units long. Every chunk is a grid of
+ * CHUNK_SEGMENTS by CHUNK_SEGMENTS segments, so a chunk of a deeper level
+ * has finer detail.
+ *
+ * Every frame the tree is walked from the root. Chunks outside the view
+ * frustum are skipped, and a chunk is split into its children when its
+ * geometric error, projected on the screen at its distance to the eye, is
+ * more than TOLERANCE pixels. The error of a chunk is measured when it is
+ * generated, as the largest difference between its triangles and the
+ * terrain function at the centres of its grid squares, so it follows the
+ * function whatever its shape. A chunk is drawn instead of its children
+ * until all four of them are resident, so there are no holes while chunks
+ * are generated. Neighbouring chunks of different levels do not share
+ * their border vertices, so every chunk has a skirt hanging down from its
+ * border that hides the cracks between them.
+ *
+ * Chunks are generated on background threads and uploaded on the OpenGL
+ * thread. When the resident chunks hold more than VERTEX_BUDGET vertices,
+ * the least recently drawn chunks that were not needed in this frame are
+ * evicted, so the memory stays bounded as the camera moves.
+ */
+public class TerrainQuadtree {
+
+    /**
+     * Terrains larger than this are drawn as a quadtree, smaller terrains as
+     * a single {@link TerrainMesh}.
+     */
+    public static final float MIN_SIZE = 2000;
+
+    /**
+     * Number of segments along each side of a chunk.
+     */
+    public static final int CHUNK_SEGMENTS = 32;
+
+    /**
+     * Chunks are split until their segments are at most this long.
+     */
+    public static final float LEAF_SEGMENT = 2.5f;
+
+    /**
+     * Largest error on the screen, in pixels, of a chunk that is drawn
+     * instead of its children.
+     */
+    public static final double TOLERANCE = 2;
+
+    /**
+     * Largest number of vertices the resident chunks may hold together,
+     * unless more chunks than that are needed now.
+     */
+    public static final int VERTEX_BUDGET = 1500000;
+
+    /**
+     * Largest number of chunks that are being generated at the same time,
+     * and that are uploaded in one frame.
+     */
+    private static final int MAX_PENDING = 16;
+    private static final int MAX_UPLOADS = 8;
+
+    /**
+     * Number of points along each side of a chunk, and number of vertices
+     * of a chunk including its skirt.
+     */
+    private static final int POINTS = CHUNK_SEGMENTS + 1;
+    private static final int VERTICES = POINTS * POINTS + 4 * POINTS;
+
+    /**
+     * The triangles of a chunk, the same for every chunk.
+     */
+    private static final int[] INDICES = indices();
+
+    /**
+     * Chunk that finished generating on a background thread.
+     */
+    private static class Result {
+
+        final long key;
+        final float[] vertices;
+        final float minZ;
+        final float maxZ;
+        final float error;
+
+        Result(long key, float[] vertices, float minZ, float maxZ, float error) {
+            this.key = key;
+            this.vertices = vertices;
+            this.minZ = minZ;
+            this.maxZ = maxZ;
+            this.error = error;
+        }
+    }
+
+    /**
+     * A resident chunk: its vertex buffer object, the range of its heights,
+     * its geometric error and the frame it was last needed in.
+     */
+    private static class Chunk {
+
+        final int vbo;
+        final float minZ;
+        final float maxZ;
+        final float error;
+        long neededFrame;
+
+        Chunk(int vbo, float minZ, float maxZ, float error) {
+            this.vbo = vbo;
+            this.minZ = minZ;
+            this.maxZ = maxZ;
+            this.error = error;
+        }
+    }
+
+    /**
+     * The parameters the tree was built for, see {@link TerrainMesh}.
+     */
+    private final TerrainMesh.Heights heights;
+    private final float size;
+    private final float periodX;
+    private final float periodY;
+    private final float amplitude;
+    private final float shift;
+    private final int maxLevel;
+
+    /**
+     * Resident chunks, least recently needed first.
+     */
+    private final LinkedHashMap<Long, Chunk> lru = new LinkedHashMap<Long, Chunk>(64, 0.75f, true);
+    private final Set<Long> pending = new HashSet<Long>();
+    private int ibo = 0;
+
+    private final ExecutorService executor;
+    private final ConcurrentLinkedQueue<Result> finished = new ConcurrentLinkedQueue<Result>();
+
+    private long frame = 0;
+    private int drawn = 0;
+    private int evictions = 0;
+
+    /**
+     * Builds the tree of a square world of {@code size} by {@code size}
+     * units around the origin. The root chunk is generated right away, all
+     * other chunks when they are needed.
+     */
+    public TerrainQuadtree(TerrainMesh.Heights heights, float size, float periodX, float periodY,
+            float amplitude, float shift) {
+        this.heights = heights;
+        this.size = size;
+        this.periodX = periodX;
+        this.periodY = periodY;
+        this.amplitude = amplitude;
+        this.shift = shift;
+        int levels = 0;
+        while (size / (CHUNK_SEGMENTS << levels) > LEAF_SEGMENT) {
+            levels++;
+        }
+        this.maxLevel = levels;
+
+        executor = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "Terrain chunks");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        finished.add(generate(0, 0, 0));
+        pending.add(0L);
+    }
+
+    /**
+     * Returns true if this tree was built for the given parameters.
+     */
+    public boolean isBuiltFor(TerrainMesh.Heights heights, float size, float periodX, float periodY,
+            float amplitude, float shift) {
+        return this.heights == heights && this.size == size && this.periodX == periodX
+                && this.periodY == periodY && this.amplitude == amplitude && this.shift == shift;
+    }
+
+    /**
+     * Uploads the chunks that finished generating, draws the chunks that
+     * the camera at {@code eye} needs with the currently bound texture, and
+     * evicts chunks when the budget is exceeded. {@code pixels} is the
+     * number of pixels a unit covers on the screen at a distance of one
+     * unit: the viewport height divided by twice the tangent of half the
+     * vertical field of view.
+     */
+    public void draw(GL2 gl, Vector eye, Frustum frustum, double pixels) {
+        frame++;
+        drawn = 0;
+        collect(gl);
+        gl.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, ibo);
+        select(gl, 0, 0, 0, eye, frustum, pixels);
+        gl.glDisableClientState(GL_TEXTURE_COORD_ARRAY);
+        gl.glDisableClientState(GL_NORMAL_ARRAY);
+        gl.glDisableClientState(GL_VERTEX_ARRAY);
+        gl.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, 0);
+        gl.glBindBuffer(GL_ARRAY_BUFFER, 0);
+        evict(gl);
+    }
+
+    /**
+     * Draws chunk (level, x, y) or its descendants, as far as they are
+     * resident and inside the frustum. Only resident chunks are visited.
+     */
+    private void select(GL2 gl, int level, int x, int y, Vector eye, Frustum frustum, double pixels) {
+        Chunk chunk = lru.get(key(level, x, y));
+        chunk.neededFrame = frame;
+        float chunkSize = size / (1 << level);
+        float minX = x * chunkSize - size / 2;
+        float minY = y * chunkSize - size / 2;
+        if (!frustum.boxVisible(Frustum.TERRAIN, minX, minY, chunk.minZ, minX + chunkSize, minY + chunkSize, chunk.maxZ)) {
+            return;
+        }
+
+        if (level < maxLevel) {
+            // distance from the eye to the box of the chunk
+            double dx = Math.max(0, Math.max(minX - eye.x(), eye.x() - minX - chunkSize));
+            double dy = Math.max(0, Math.max(minY - eye.y(), eye.y() - minY - chunkSize));
+            double dz = Math.max(0, Math.max(chunk.minZ - eye.z(), eye.z() - chunk.maxZ));
+            double distance = Math.max(Math.sqrt(dx * dx + dy * dy + dz * dz), 1e-3);
+            if (chunk.error * pixels / distance > TOLERANCE) {
+                boolean ready = true;
+                for (int child = 0; child < 4; child++) {
+                    int cx = 2 * x + (child & 1);
+                    int cy = 2 * y + (child >> 1);
+                    Chunk resident = lru.get(key(level + 1, cx, cy));
+                    if (resident == null) {
+                        request(level + 1, cx, cy);
+                        ready = false;
+                    } else {
+                        resident.neededFrame = frame;
+                    }
+                }
+                if (ready) {
+                    for (int child = 0; child < 4; child++) {
+                        select(gl, level + 1, 2 * x + (child & 1), 2 * y + (child >> 1), eye, frustum, pixels);
+                    }
+                    return;
+                }
+            }
+        }
+
+        gl.glBindBuffer(GL_ARRAY_BUFFER, chunk.vbo);
+        gl.glInterleavedArrays(GL_T2F_N3F_V3F, 0, 0);
+        gl.glDrawElements(GL_TRIANGLES, INDICES.length, GL_UNSIGNED_INT, 0);
+        drawn++;
+    }
+
+    /**
+     * Generates chunk (level, x, y) on a background thread, unless it is
+     * already being generated or too many chunks are.
+     */
+    private void request(final int level, final int x, final int y) {
+        final long key = key(level, x, y);
+        if (pending.size() >= MAX_PENDING || !pending.add(key)) {
+            return;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                finished.add(generate(level, x, y));
+            }
+        });
+    }
+
+    /**
+     * Computes the vertices of chunk (level, x, y): the grid points, with
+     * normals from the heights of their neighbours, and the skirt below its
+     * border, together with the error of the chunk. This only reads the
+     * parameters, so it can run on any thread.
+     */
+    private Result generate(int level, int x, int y) {
+        float chunkSize = size / (1 << level);
+        float step = chunkSize / CHUNK_SEGMENTS;
+        float originX = x * chunkSize - size / 2;
+        float originY = y * chunkSize - size / 2;
+
+        // the heights include a ring of points around the chunk for the normals at its border
+        int ring = POINTS + 2;
+        float[] height = new float[ring * ring];
+        float[] scratch = new float[ring];
+        // like TerrainMesh, the terrain function starts at the corner of the terrain
+        float cornerX = x * chunkSize;
+        float cornerY = y * chunkSize;
+        for (int i = 0; i < ring; i++) {
+            heights.heightsAt((cornerX + (i - 1) * step) / periodX, (cornerY - step) / periodY, step / periodY,
+                    ring, height, i * ring, scratch);
+        }
+
+        float[] vertices = new float[VERTICES * TerrainMesh.FLOATS_PER_VERTEX];
+        float minZ = Float.MAX_VALUE;
+        float maxZ = -Float.MAX_VALUE;
+        for (int i = 0; i < POINTS; i++) {
+            for (int j = 0; j < POINTS; j++) {
+                int p = (i + 1) * ring + j + 1;
+                float h = height[p];
+                float slopeX = (height[p + ring] - height[p - ring]) * amplitude / (2 * step);
+                float slopeY = (height[p + 1] - height[p - 1]) * amplitude / (2 * step);
+                float length = (float) Math.sqrt(slopeX * slopeX + slopeY * slopeY + 1);
+                float z = h * amplitude - shift - 5;
+                minZ = Math.min(minZ, z);
+                maxZ = Math.max(maxZ, z);
+
+                int v = (i * POINTS + j) * TerrainMesh.FLOATS_PER_VERTEX;
+                vertices[v] = h / 2 + 0.5f;
+                vertices[v + 1] = 0;
+                vertices[v + 2] = -slopeX / length;
+                vertices[v + 3] = -slopeY / length;
+                vertices[v + 4] = 1 / length;
+                vertices[v + 5] = originX + i * step;
+                vertices[v + 6] = originY + j * step;
+                vertices[v + 7] = z;
+            }
+        }
+
+        // the triangles are split along the diagonal from (i, j) to (i + 1, j + 1), which passes
+        // through the centre of the square
+        float[] centres = new float[CHUNK_SEGMENTS];
+        float error = 0;
+        for (int i = 0; i < CHUNK_SEGMENTS; i++) {
+            heights.heightsAt((cornerX + (i + 0.5f) * step) / periodX, (cornerY + 0.5f * step) / periodY,
+                    step / periodY, CHUNK_SEGMENTS, centres, 0, scratch);
+            for (int j = 0; j < CHUNK_SEGMENTS; j++) {
+                int p = (i + 1) * ring + j + 1;
+                float between = (height[p] + height[p + ring + 1]) / 2;
+                error = Math.max(error, Math.abs(centres[j] - between) * amplitude);
+            }
+        }
+
+        // the skirt copies the border points, lowered by more than the cracks with a neighbour up to
+        // two levels coarser, which is as coarse as neighbours get in practice: such a neighbour has
+        // every second or fourth of the border points and runs straight between them
+        float crack = 0;
+        for (int side = 0; side < 4; side++) {
+            for (int stride = 2; stride <= 4; stride *= 2) {
+                for (int k = 0; k < POINTS; k++) {
+                    int first = k - k % stride;
+                    int last = Math.min(first + stride, CHUNK_SEGMENTS);
+                    float t = (float) (k - first) / stride;
+                    float straight = heightAt(height, ring, side, first) * (1 - t)
+                            + heightAt(height, ring, side, last) * t;
+                    crack = Math.max(crack, Math.abs(heightAt(height, ring, side, k) - straight) * amplitude);
+                }
+            }
+        }
+        float depth = crack + step;
+        for (int side = 0; side < 4; side++) {
+            for (int k = 0; k < POINTS; k++) {
+                int from = (border(side, k)) * TerrainMesh.FLOATS_PER_VERTEX;
+                int to = (POINTS * POINTS + side * POINTS + k) * TerrainMesh.FLOATS_PER_VERTEX;
+                System.arraycopy(vertices, from, vertices, to, TerrainMesh.FLOATS_PER_VERTEX);
+                vertices[to + 7] -= depth;
+            }
+        }
+        return new Result(key(level, x, y), vertices, minZ - depth, maxZ, error);
+    }
+
+    /**
+     * Returns the height of grid point k along the given side of a chunk,
+     * from the heights with a ring around them.
+     */
+    private static float heightAt(float[] height, int ring, int side, int k) {
+        int point = border(side, k);
+        return height[(point / POINTS + 1) * ring + point % POINTS + 1];
+    }
+
+    /**
+     * Returns the grid point k along the given side of a chunk: bottom,
+     * right, top and left.
+     */
+    private static int border(int side, int k) {
+        switch (side) {
+            case 0:
+                return k * POINTS;
+            case 1:
+                return CHUNK_SEGMENTS * POINTS + k;
+            case 2:
+                return k * POINTS + CHUNK_SEGMENTS;
+            default:
+                return k;
+        }
+    }
+
+    /**
+     * Computes the triangles of a chunk: two per grid square and two per
+     * square of the skirt.
+     */
+    private static int[] indices() {
+        int[] indices = new int[6 * CHUNK_SEGMENTS * CHUNK_SEGMENTS + 4 * 6 * CHUNK_SEGMENTS];
+        int n = 0;
+        for (int i = 0; i < CHUNK_SEGMENTS; i++) {
+            for (int j = 0; j < CHUNK_SEGMENTS; j++) {
+                int a = i * POINTS + j;
+                int b = a + POINTS;
+                indices[n++] = a;
+                indices[n++] = b;
+                indices[n++] = b + 1;
+                indices[n++] = a;
+                indices[n++] = b + 1;
+                indices[n++] = a + 1;
+            }
+        }
+        for (int side = 0; side < 4; side++) {
+            int skirt = POINTS * POINTS + side * POINTS;
+            for (int k = 0; k < CHUNK_SEGMENTS; k++) {
+                int a = border(side, k);
+                int b = border(side, k + 1);
+                indices[n++] = a;
+                indices[n++] = skirt + k;
+                indices[n++] = skirt + k + 1;
+                indices[n++] = a;
+                indices[n++] = skirt + k + 1;
+                indices[n++] = b;
+            }
+        }
+        return indices;
+    }
+
+    private static long key(int level, int x, int y) {
+        return ((long) level << 56) | ((long) x << 28) | y;
+    }
+
+    /**
+     * Uploads at most MAX_UPLOADS chunks that finished generating, and the
+     * shared triangles the first time.
+     */
+    private void collect(GL2 gl) {
+        int[] names = new int[1];
+        if (ibo == 0) {
+            gl.glGenBuffers(1, names, 0);
+            ibo = names[0];
+            gl.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, ibo);
+            gl.glBufferData(GL_ELEMENT_ARRAY_BUFFER, INDICES.length * Buffers.SIZEOF_INT,
+                    Buffers.newDirectIntBuffer(INDICES), GL_STATIC_DRAW);
+            gl.glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, 0);
+        }
+        Result result;
+        for (int uploads = 0; uploads < MAX_UPLOADS && (result = finished.poll()) != null; uploads++) {
+            pending.remove(result.key);
+            gl.glGenBuffers(1, names, 0);
+            gl.glBindBuffer(GL_ARRAY_BUFFER, names[0]);
+            gl.glBufferData(GL_ARRAY_BUFFER, result.vertices.length * Buffers.SIZEOF_FLOAT,
+                    Buffers.newDirectFloatBuffer(result.vertices), GL_STATIC_DRAW);
+            gl.glBindBuffer(GL_ARRAY_BUFFER, 0);
+            Chunk chunk = new Chunk(names[0], result.minZ, result.maxZ, result.error);
+            chunk.neededFrame = frame;
+            lru.put(result.key, chunk);
+        }
+    }
+
+    /**
+     * Evicts the least recently needed chunks that were not needed in this
+     * frame while the budget is exceeded. The root is never evicted.
+     */
+    private void evict(GL2 gl) {
+        Iterator<Long> eldest = new ArrayList<Long>(lru.keySet()).iterator();
+        while (lru.size() * VERTICES > VERTEX_BUDGET && eldest.hasNext()) {
+            long key = eldest.next();
+            Chunk chunk = lru.get(key);
+            if (key != 0 && chunk.neededFrame != frame) {
+                lru.remove(key);
+                gl.glDeleteBuffers(1, new int[]{chunk.vbo}, 0);
+                evictions++;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of chunks drawn in the last frame.
+     */
+    public int getDrawn() {
+        return drawn;
+    }
+
+    /**
+     * Returns the number of vertices of the resident chunks.
+     */
+    public int getResidentVertices() {
+        return lru.size() * VERTICES;
+    }
+
+    /**
+     * Returns the number of chunks that were evicted so far.
+     */
+    public int getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Deletes all resident chunks and stops the background threads.
+     */
+    public void dispose(GL2 gl) {
+        executor.shutdownNow();
+        for (Chunk chunk : lru.values()) {
+            gl.glDeleteBuffers(1, new int[]{chunk.vbo}, 0);
+        }
+        lru.clear();
+        if (ibo != 0) {
+            gl.glDeleteBuffers(1, new int[]{ibo}, 0);
+            ibo = 0;
+        }
+    }
+}
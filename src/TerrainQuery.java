@@ -0,0 +1,261 @@
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Answers how high the ground is at any point, and which way it faces,
+ * without evaluating the terrain function for every question. The heights
+ * are cached in a grid with SPACING units between the points, starting at
+ * the corner of the terrain and going on beyond it, in tiles of
+ * TILE_CELLS by TILE_CELLS cells that are computed the first time a point
+ * in them is asked for. A query interpolates bilinearly between the four
+ * grid points around it, which costs a few multiplications and, unless the
+ * previous query of the same thread was in the same tile, a hash lookup.
+ *
+ * Queries may come from any thread at the same time: a tile is only
+ * published after it is complete, and two threads that compute the same
+ * tile at once both use the one that was published first. When MAX_TILES
+ * tiles are cached, one tile is evicted for every new one with the clock
+ * algorithm: the tiles are visited in the order they were added, and the
+ * first one that was not used since the previous visit goes.
+ *
+ * The heights follow the terrain function itself rather than the mesh that
+ * is drawn, which is coarser; they differ by at most a few tenths of a unit
+ * for the default terrain.
+ */
+public class TerrainQuery {
+
+    /**
+     * Distance between the grid points in units.
+     */
+    public static final float SPACING = 1;
+
+    /**
+     * Number of cells along each side of a tile.
+     */
+    public static final int TILE_CELLS = 64;
+    private static final int TILE_SHIFT = 6;
+
+    /**
+     * Number of tiles that are kept at most.
+     */
+    public static final int MAX_TILES = 1024;
+
+    /**
+     * Points along each side of a tile, the points on its far edges are
+     * shared with the next tiles.
+     */
+    private static final int POINTS = TILE_CELLS + 1;
+
+    /**
+     * The parameters the cache was built for.
+     */
+    private final TerrainMesh.Heights heights;
+    private final float periodX;
+    private final float periodY;
+    private final float amplitude;
+    private final float shift;
+    private final float cornerX;
+    private final float cornerY;
+
+    private final ConcurrentMap<Long, Tile> tiles = new ConcurrentHashMap<Long, Tile>();
+
+    /**
+     * Keys of the cached tiles in the order the clock visits them, guarded
+     * by itself.
+     */
+    private final ArrayDeque<Long> clock = new ArrayDeque<Long>();
+
+    /**
+     * The tile every thread used last, queries close together mostly need
+     * the same tile and then skip the lookup.
+     */
+    private final ThreadLocal<Last> last = new ThreadLocal<Last>() {
+        @Override
+        protected Last initialValue() {
+            return new Last();
+        }
+    };
+
+    /**
+     * The heights of a tile, and whether it was used since the clock last
+     * passed it. The flag is only a hint, so it is not synchronized.
+     */
+    private static class Tile {
+
+        final float[] heights;
+        boolean used = true;
+
+        Tile(float[] heights) {
+            this.heights = heights;
+        }
+    }
+
+    /**
+     * The tile a thread used last, with its position.
+     */
+    private static class Last {
+
+        int tileX = Integer.MIN_VALUE;
+        int tileY = Integer.MIN_VALUE;
+        Tile tile;
+    }
+
+    /**
+     * Creates an empty cache of the terrain with the given heights and
+     * parameters, see {@link TerrainMesh}, whose terrain function starts at
+     * the corner ({@code cornerX}, {@code cornerY}).
+     */
+    public TerrainQuery(TerrainMesh.Heights heights, float periodX, float periodY, float amplitude, float shift,
+            float cornerX, float cornerY) {
+        this.heights = heights;
+        this.periodX = periodX;
+        this.periodY = periodY;
+        this.amplitude = amplitude;
+        this.shift = shift;
+        this.cornerX = cornerX;
+        this.cornerY = cornerY;
+    }
+
+    /**
+     * Returns true if this cache was built for the given parameters.
+     */
+    public boolean isBuiltFor(TerrainMesh.Heights heights, float periodX, float periodY, float amplitude, float shift,
+            float cornerX, float cornerY) {
+        return this.heights == heights && this.periodX == periodX && this.periodY == periodY
+                && this.amplitude == amplitude && this.shift == shift
+                && this.cornerX == cornerX && this.cornerY == cornerY;
+    }
+
+    /**
+     * Returns the height of the ground at ({@code x}, {@code y}).
+     */
+    public double heightAt(double x, double y) {
+        double gx = (x - cornerX) / SPACING;
+        double gy = (y - cornerY) / SPACING;
+        int cellX = (int) Math.floor(gx);
+        int cellY = (int) Math.floor(gy);
+        double fx = gx - cellX;
+        double fy = gy - cellY;
+        float[] tile = tile(cellX, cellY);
+        int p = (cellX & (TILE_CELLS - 1)) * POINTS + (cellY & (TILE_CELLS - 1));
+        double bottom = tile[p] + (tile[p + POINTS] - tile[p]) * fx;
+        double top = tile[p + 1] + (tile[p + POINTS + 1] - tile[p + 1]) * fx;
+        return bottom + (top - bottom) * fy;
+    }
+
+    /**
+     * Stores the unit normal of the ground at ({@code x}, {@code y}) in
+     * {@code out} from {@code offset} on, as the normal of the bilinear
+     * patch there.
+     */
+    public void normalAt(double x, double y, double[] out, int offset) {
+        double gx = (x - cornerX) / SPACING;
+        double gy = (y - cornerY) / SPACING;
+        int cellX = (int) Math.floor(gx);
+        int cellY = (int) Math.floor(gy);
+        double fx = gx - cellX;
+        double fy = gy - cellY;
+        float[] tile = tile(cellX, cellY);
+        int p = (cellX & (TILE_CELLS - 1)) * POINTS + (cellY & (TILE_CELLS - 1));
+        double h00 = tile[p];
+        double h10 = tile[p + POINTS];
+        double h01 = tile[p + 1];
+        double h11 = tile[p + POINTS + 1];
+        double slopeX = ((h10 - h00) * (1 - fy) + (h11 - h01) * fy) / SPACING;
+        double slopeY = ((h01 - h00) * (1 - fx) + (h11 - h10) * fx) / SPACING;
+        double length = Math.sqrt(slopeX * slopeX + slopeY * slopeY + 1);
+        out[offset] = -slopeX / length;
+        out[offset + 1] = -slopeY / length;
+        out[offset + 2] = 1 / length;
+    }
+
+    /**
+     * Stores the heights of the ground at the {@code n} points
+     * ({@code xs[i]}, {@code ys[i]}) in {@code out}.
+     */
+    public void heightsAt(double[] xs, double[] ys, double[] out, int n) {
+        for (int i = 0; i < n; i++) {
+            out[i] = heightAt(xs[i], ys[i]);
+        }
+    }
+
+    /**
+     * Returns the number of tiles that are cached.
+     */
+    public int getTiles() {
+        return tiles.size();
+    }
+
+    /**
+     * Returns the tile that holds cell ({@code cellX}, {@code cellY}),
+     * computing it if it is not cached.
+     */
+    private float[] tile(int cellX, int cellY) {
+        int tileX = cellX >> TILE_SHIFT;
+        int tileY = cellY >> TILE_SHIFT;
+        Last recent = last.get();
+        if (recent.tileX == tileX && recent.tileY == tileY) {
+            Tile tile = recent.tile;
+            if (!tile.used) {
+                tile.used = true;
+            }
+            return tile.heights;
+        }
+        Long key = ((long) tileX << 32) | (tileY & 0xffffffffL);
+        Tile tile = tiles.get(key);
+        if (tile == null) {
+            tile = new Tile(generate(tileX, tileY));
+            Tile earlier = tiles.putIfAbsent(key, tile);
+            if (earlier != null) {
+                tile = earlier;
+            } else {
+                added(key);
+            }
+        }
+        tile.used = true;
+        recent.tileX = tileX;
+        recent.tileY = tileY;
+        recent.tile = tile;
+        return tile.heights;
+    }
+
+    /**
+     * Puts the key of a tile that was just cached on the clock, and evicts
+     * a tile if there are too many.
+     */
+    private void added(Long key) {
+        synchronized (clock) {
+            clock.add(key);
+            while (clock.size() > MAX_TILES) {
+                Long oldest = clock.poll();
+                Tile tile = tiles.get(oldest);
+                if (tile.used) {
+                    tile.used = false;
+                    clock.add(oldest);
+                } else {
+                    tiles.remove(oldest);
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes the heights of the grid points of tile ({@code tileX},
+     * {@code tileY}), row by row.
+     */
+    private float[] generate(int tileX, int tileY) {
+        float[] tile = new float[POINTS * POINTS];
+        float[] scratch = new float[POINTS];
+        float originX = tileX * TILE_CELLS * SPACING;
+        float originY = tileY * TILE_CELLS * SPACING;
+        for (int i = 0; i < POINTS; i++) {
+            heights.heightsAt((originX + i * SPACING) / periodX, originY / periodY, SPACING / periodY,
+                    POINTS, tile, i * POINTS, scratch);
+        }
+        for (int p = 0; p < tile.length; p++) {
+            tile[p] = tile[p] * amplitude - shift - 5;
+        }
+        return tile;
+    }
+}
@@ -0,0 +1,655 @@
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import robotrace.Vector;
+import static javax.media.opengl.GL2.GL_QUAD_STRIP;
+
+/**
+ * A race track made from Bezier trackparts, together with everything that is
+ * computed from its definition: the arc-length table, the frame table and
+ * the tessellated geometry of its lanes and walls. This is computed once
+ * when the track is built from its definition, or read back from a baked
+ * track cache (see {@link TrackCache}).
+ */
+public class Track {
+
+    /**
+     * Number of evenly spaced curve parameters at which the arc-length table
+     * and the frame table of every trackpart are sampled.
+     */
+    public static final int ARC_LENGTH_SAMPLES = 200;
+
+    /**
+     * Number of chords that are summed to measure the length between two
+     * samples of the arc-length table.
+     */
+    private static final int ARC_LENGTH_CHORDS = 8;
+
+    /**
+     * Number of pieces every trackpart is split in when the track is
+     * tessellated uniformly.
+     */
+    public static final int UNIFORM_STEPS = 100;
+
+    /**
+     * Adaptive tessellation splits a piece at least this many times, so an
+     * S-bend whose midpoint lies on its chord is never taken for a straight,
+     * and at most this many times.
+     */
+    private static final int MIN_SUBDIVISION_DEPTH = 2;
+    private static final int MAX_SUBDIVISION_DEPTH = 10;
+
+    /**
+     * Width of a single lane.
+     */
+    public static final double LANE_WIDTH = 6;
+
+    /**
+     * If true, trackparts are tessellated adaptively, otherwise every
+     * trackpart is split in UNIFORM_STEPS pieces. Can be turned off with the
+     * system property robotrace.adaptive=false; the track cache is rebuilt
+     * when it changes.
+     */
+    public static final boolean ADAPTIVE_TESSELLATION = Boolean.parseBoolean(System.getProperty("robotrace.adaptive", "true"));
+
+    /**
+     * Levels of detail a track can be tessellated at. Paged tracks (see
+     * {@link TrackPager}) tessellate distant chunks at the coarse level.
+     */
+    public static final int DETAIL_FULL = 0;
+    public static final int DETAIL_COARSE = 1;
+
+    /**
+     * Number of pieces every trackpart is split in when the track is
+     * tessellated uniformly at the coarse level.
+     */
+    private static final int COARSE_UNIFORM_STEPS = 10;
+
+    /**
+     * Largest distance between the centerline and a tessellated piece of it
+     * that adaptive tessellation allows, indexed by level of detail.
+     */
+    private static final double[] FLATNESS_TOLERANCE = {0.05, 1};
+
+    /**
+     * Layout of a piece of sampled centerline (see {@link #sampleCenterline}):
+     * start point, end point, the horizontal unit normal to the right of the
+     * piece, the drop that the lanes are lowered by, the length of the piece,
+     * its index within its trackpart and the distance along the centerline
+     * at which it starts.
+     */
+    private static final int PIECE_START = 0;
+    private static final int PIECE_END = 3;
+    private static final int PIECE_NORMAL = 6;
+    private static final int PIECE_DROP = 8;
+    private static final int PIECE_LENGTH = 9;
+    private static final int PIECE_INDEX = 10;
+    private static final int PIECE_ALONG = 11;
+    private static final int PIECE_SIZE = 12;
+
+    /**
+     * Cosine of the largest angle the centerline may turn within one piece,
+     * 5 degrees at full detail and 20 degrees at the coarse level. This
+     * bounds the error of the lanes and walls, which lie several lanes away
+     * from the centerline.
+     */
+    private static final double[] MAX_TURN_COS = {Math.cos(Math.toRadians(5)), Math.cos(Math.toRadians(20))};
+
+    /**
+     * Tracks with more trackparts than this are not tessellated as a whole
+     * but paged in chunks around the camera by a {@link TrackPager}.
+     */
+    public static final int PAGING_THRESHOLD = 256;
+
+    /**
+     * Threads that build the tracks, the number of threads can be set with
+     * the system property robotrace.threads.
+     */
+    private static final ForkJoinPool POOL = new ForkJoinPool(
+            Integer.getInteger("robotrace.threads", Runtime.getRuntime().availableProcessors()));
+
+    /**
+     * A build task handles at most this many trackparts itself and splits
+     * larger ranges in two.
+     */
+    private static final int PARTS_PER_TASK = 16;
+
+    public final TrackDefinition definition;
+    public final ArcLengthTable arcLengths;
+    public final FrameTable frames;
+    public final TrackMesh mesh;
+
+    /**
+     * Number of vertices that adaptive tessellation saved compared to
+     * uniform tessellation.
+     */
+    public final int savedVertices;
+
+    /**
+     * Pool that builds the track and its chunks.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Builds the track from its definition: measures it, samples its frames
+     * and tessellates its lanes and walls. The work is split by trackpart
+     * over a fork-join pool, see {@link Builder}. The mesh of a paged track
+     * is left empty, its chunks are built with {@link #buildChunk}.
+     */
+    public Track(TrackDefinition definition) {
+        this(definition, POOL);
+    }
+
+    /**
+     * Builds the track from its definition like {@link #Track(TrackDefinition)},
+     * on the given pool instead of the shared one. The result is the same
+     * for any pool.
+     */
+    public Track(TrackDefinition definition, ForkJoinPool pool) {
+        this.definition = definition;
+        this.pool = pool;
+        int parts = definition.getPartCount();
+        this.frames = new FrameTable(parts - 1, ARC_LENGTH_SAMPLES);
+        this.mesh = new TrackMesh();
+        Builder builder = new Builder(isPaged() ? null : mesh, 0, parts, DETAIL_FULL, true, 0);
+        builder.build();
+        this.arcLengths = new ArcLengthTable(builder.lengths);
+
+        // the lanes and two walls, each with two vertices per piece, and the closing pair of both walls
+        int uniformVertices = (definition.lanes + 2) * 2 * UNIFORM_STEPS * parts + 2 * 2;
+        this.savedVertices = isPaged() ? 0 : uniformVertices - mesh.getVertexCount();
+    }
+
+    private Track(TrackDefinition definition, ArcLengthTable arcLengths, FrameTable frames, TrackMesh mesh, int savedVertices) {
+        this.definition = definition;
+        this.pool = POOL;
+        this.arcLengths = arcLengths;
+        this.frames = frames;
+        this.mesh = mesh;
+        this.savedVertices = savedVertices;
+    }
+
+    /**
+     * Returns true if this track is too large to be tessellated as a whole
+     * and is paged in chunks instead.
+     */
+    public boolean isPaged() {
+        return definition.getPartCount() > PAGING_THRESHOLD;
+    }
+
+    /**
+     * Tessellates the lanes and walls of trackparts {@code from} up to
+     * {@code to} at the given level of detail into a new mesh. This only
+     * reads the definition and the arc-length table, so it can be called
+     * from any thread.
+     */
+    public TrackMesh buildChunk(int from, int to, int detail) {
+        TrackMesh chunk = new TrackMesh();
+        // the texture continues from the previous chunk
+        double along = from < arcLengths.getPartCount() ? arcLengths.getPartStart(from) : arcLengths.getLapLength();
+        new Builder(chunk, from, to, detail, false, along).build();
+        return chunk;
+    }
+
+    /**
+     * Returns the point at parameter t of trackpart j.
+     */
+    public Vector partpoint(int j, double t) {
+        int offset = j * Bezier.DOUBLES_PER_PART;
+        double[] packed = definition.packed;
+        int type = definition.buildType[j];
+        return new Vector(Bezier.coordinate(type, packed, offset, 0, t), Bezier.coordinate(type, packed, offset, 1, t), Bezier.coordinate(type, packed, offset, 2, t));
+    }
+
+    /**
+     * Writes the distance from the start of trackpart j at every sample of
+     * the arc-length table to {@code row}.
+     */
+    private static void measurePart(double[] packed, int Buildtype[], int j, double[] row, Bezier.Stepper stepper) {
+        double[] chord = new double[6]; // previous and next point of a chord
+        stepper.start(Buildtype[j], packed, j * Bezier.DOUBLES_PER_PART, ARC_LENGTH_SAMPLES * ARC_LENGTH_CHORDS);
+        stepper.next(chord, 0);
+        double length = 0;
+        for (int i = 1; i <= ARC_LENGTH_SAMPLES; i++) {
+            // sum the chords between two samples, the sum converges to the arc length
+            for (int k = 1; k <= ARC_LENGTH_CHORDS; k++) {
+                stepper.next(chord, 3);
+                double dx = chord[3] - chord[0];
+                double dy = chord[4] - chord[1];
+                double dz = chord[5] - chord[2];
+                length += Math.sqrt(dx * dx + dy * dy + dz * dz);
+                chord[0] = chord[3];
+                chord[1] = chord[4];
+                chord[2] = chord[5];
+            }
+            row[i] = length;
+        }
+    }
+
+    /**
+     * Returns the curve parameters at which trackpart j is tessellated,
+     * starting at 0 and ending at 1, at the given level of detail. In uniform
+     * mode the trackpart is split in UNIFORM_STEPS pieces. In adaptive mode a
+     * piece is split in two until it lies within FLATNESS_TOLERANCE of its
+     * chord and turns less than MAX_TURN_COS, so vertices are only placed
+     * where the track bends.
+     */
+    public double[] tessellationParameters(int j, int detail) {
+        if (!ADAPTIVE_TESSELLATION) {
+            int steps = detail == DETAIL_FULL ? UNIFORM_STEPS : COARSE_UNIFORM_STEPS;
+            double[] params = new double[steps + 1];
+            for (int i = 0; i <= steps; i++) {
+                params[i] = (double) i / steps;
+            }
+            return params;
+        }
+        if (definition.buildType[j] == Bezier.LINE) { // a line needs no vertices between its ends
+            return new double[]{0, 1};
+        }
+
+        ArrayList<Double> params = new ArrayList<Double>();
+        params.add(0d);
+        subdivide(j, 0, 1, partpoint(j, 0), partpoint(j, 1), 0, detail, params);
+        double[] result = new double[params.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = params.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Adds the end parameters of the pieces of [a, b] of trackpart j to
+     * params, splitting the piece in two while it is not flat.
+     */
+    private void subdivide(int j, double a, double b, Vector pa, Vector pb, int depth, int detail, ArrayList<Double> params) {
+        double m = (a + b) / 2;
+        Vector pm = partpoint(j, m);
+        if (depth < MIN_SUBDIVISION_DEPTH || (depth < MAX_SUBDIVISION_DEPTH && !isFlat(pa, pm, pb, detail))) {
+            subdivide(j, a, m, pa, pm, depth + 1, detail, params);
+            subdivide(j, m, b, pm, pb, depth + 1, detail, params);
+        } else {
+            params.add(b);
+        }
+    }
+
+    /**
+     * Returns true if the piece of curve from pa via pm to pb can be drawn as
+     * a single chord at the given level of detail.
+     */
+    private static boolean isFlat(Vector pa, Vector pm, Vector pb, int detail) {
+        // the midpoint of the curve may lie at most FLATNESS_TOLERANCE from the midpoint of the chord
+        Vector sag = pm.subtract(pa.add(pb).scale(0.5));
+        if (sag.length() > FLATNESS_TOLERANCE[detail]) {
+            return false;
+        }
+        // and both halves of the piece have to point in nearly the same direction
+        Vector first = pm.subtract(pa);
+        Vector second = pb.subtract(pm);
+        double lengths = first.length() * second.length();
+        if (lengths == 0) {
+            return true;
+        }
+        return first.dot(second) / lengths >= MAX_TURN_COS[detail];
+    }
+
+    /**
+     * Builds the tables of the track and the mesh of a range of its
+     * trackparts. Every stage is split by trackpart over the pool and every task
+     * only writes the rows of its own trackparts and its own slices of the
+     * preallocated centerline samples and vertices. The offsets of those
+     * slices are prefix sums that are computed between the stages, so the
+     * result is the same for any number of threads.
+     */
+    private final class Builder {
+
+        /**
+         * Stages of the build: measure the trackparts, sample the frames and
+         * choose the tessellation parameters; sample the centerline; emit the
+         * vertices of the lanes and walls.
+         */
+        private static final int MEASURE = 0;
+        private static final int SAMPLE = 1;
+        private static final int EMIT = 2;
+
+        private final int parts = definition.getPartCount();
+
+        /**
+         * The mesh that is built, or null if only the tables are built.
+         */
+        private final TrackMesh mesh;
+
+        /**
+         * Range of trackparts that is tessellated and its level of detail.
+         */
+        private final int from;
+        private final int to;
+        private final int detail;
+
+        /**
+         * Distance along the centerline at which trackpart {@code from}
+         * starts.
+         */
+        private final double alongStart;
+
+        /**
+         * Rows of the arc-length table, one for every driven trackpart, or
+         * null if the tables are not built.
+         */
+        private final double[][] lengths;
+
+        /**
+         * Tessellation parameters of every trackpart in the range.
+         */
+        private final double[][] params;
+
+        /**
+         * Index of the first piece of every trackpart in the range, the last
+         * entry holds the number of pieces.
+         */
+        private final int[] firstPiece;
+
+        /**
+         * The sampled centerline, PIECE_SIZE doubles per piece.
+         */
+        private double[] samples;
+
+        /**
+         * First vertex of every lane, followed by the inner and outer wall.
+         */
+        private int[] firstVertex;
+
+        /**
+         * Creates a builder for trackparts {@code from} up to {@code to}. If
+         * {@code measure} is true the arc-length rows and frames of all
+         * trackparts are built as well.
+         */
+        Builder(TrackMesh mesh, int from, int to, int detail, boolean measure, double alongStart) {
+            this.mesh = mesh;
+            this.from = from;
+            this.to = to;
+            this.detail = detail;
+            this.alongStart = alongStart;
+            this.lengths = measure ? new double[parts - 1][ARC_LENGTH_SAMPLES + 1] : null;
+            this.params = new double[to - from][];
+            this.firstPiece = new int[to - from + 1];
+        }
+
+        void build() {
+            pool.invoke(new Task(MEASURE, from, to));
+            if (mesh == null) {
+                return;
+            }
+            for (int j = 0; j < to - from; j++) {
+                firstPiece[j + 1] = firstPiece[j] + params[j].length - 1;
+            }
+            int pieces = firstPiece[to - from];
+
+            samples = new double[pieces * PIECE_SIZE];
+            pool.invoke(new Task(SAMPLE, from, to));
+            // the distance along the centerline (for the texture coordinates) is a prefix sum over the pieces
+            double along = alongStart;
+            for (int k = 0; k < samples.length; k += PIECE_SIZE) {
+                samples[k + PIECE_ALONG] = along;
+                along += samples[k + PIECE_LENGTH];
+            }
+
+            int lanes = definition.lanes;
+            firstVertex = new int[lanes + 2];
+            for (int lane = 0; lane < lanes; lane++) { // every individual lane with its own color
+                firstVertex[lane] = mesh.reserve(GL_QUAD_STRIP, TrackMesh.SURFACE_TRACK, lane, 2 * pieces);
+            }
+            // the walls are the same for every lane, they get the color of the first lane; a wall has a
+            // pair of vertices at the start of every piece and a closing pair at the end of the last one
+            firstVertex[lanes] = mesh.reserve(GL_QUAD_STRIP, TrackMesh.SURFACE_BRICK, 0, 2 * pieces + 2);
+            firstVertex[lanes + 1] = mesh.reserve(GL_QUAD_STRIP, TrackMesh.SURFACE_BRICK, 0, 2 * pieces + 2);
+            pool.invoke(new Task(EMIT, from, to));
+        }
+
+        /**
+         * Runs one stage for trackpart j.
+         */
+        private void run(int stage, int j, Bezier.Stepper stepper) {
+            if (stage == MEASURE) {
+                if (lengths != null && j < parts - 1) { // the connecting piece is not driven on
+                    measurePart(definition.packed, definition.buildType, j, lengths[j], stepper);
+                    frames.sample(j, definition.buildType, definition.packed);
+                }
+                if (mesh != null) {
+                    params[j - from] = tessellationParameters(j, detail);
+                }
+            } else if (stage == SAMPLE) {
+                sampleCenterline(j);
+            } else {
+                emit(j);
+            }
+        }
+
+        /**
+         * Samples the centerline of trackpart j once at its tessellation
+         * parameters. The lanes and walls are offset curves of the centerline,
+         * so they are all generated from these samples instead of evaluating
+         * the curves again for every lane.
+         */
+        private void sampleCenterline(int j) {
+            int type = definition.buildType[j];
+            double[] packed = definition.packed;
+            int offset = j * Bezier.DOUBLES_PER_PART;
+            double[] partParams = params[j - from];
+            int k = firstPiece[j - from] * PIECE_SIZE;
+            for (int i = 0; i < partParams.length - 1; i++, k += PIECE_SIZE) { // sample the trackpart piece by piece
+                Bezier.point(type, packed, offset, partParams[i], samples, k + PIECE_START);
+                Bezier.point(type, packed, offset, partParams[i + 1], samples, k + PIECE_END);
+                double llx = samples[k + PIECE_END] - samples[k + PIECE_START];
+                double lly = samples[k + PIECE_END + 1] - samples[k + PIECE_START + 1];
+                double llz = samples[k + PIECE_END + 2] - samples[k + PIECE_START + 2];
+                double s = Math.sqrt(llx * llx + lly * lly);
+                samples[k + PIECE_NORMAL] = lly / s;
+                samples[k + PIECE_NORMAL + 1] = -llx / s;
+                samples[k + PIECE_DROP] = -llz;
+                samples[k + PIECE_LENGTH] = Math.sqrt(llx * llx + lly * lly + llz * llz);
+                samples[k + PIECE_INDEX] = i;
+            }
+        }
+
+        /**
+         * Sets the vertices of the lanes and walls along trackpart j. For n
+         * lanes, lane i runs from n - 1 - i to n - 2 - i lane widths to the
+         * right of the centerline, so lane 0 is the outermost lane; the inner
+         * wall stands one lane width to the left of the centerline and the
+         * outer wall n - 1 lane widths to the right.
+         */
+        private void emit(int j) {
+            int lanes = definition.lanes;
+            double trackwidth = LANE_WIDTH;
+            for (int piece = firstPiece[j - from]; piece < firstPiece[j - from + 1]; piece++) {
+                int k = piece * PIECE_SIZE;
+                double drop = samples[k + PIECE_DROP];
+                double along = samples[k + PIECE_ALONG];
+                int i = (int) samples[k + PIECE_INDEX];
+                for (int lane = 0; lane < lanes; lane++) {
+                    int v = firstVertex[lane] + 2 * piece;
+                    double outer = trackwidth * (lanes - 1 - lane);
+                    double inner = trackwidth * (lanes - 2 - lane);
+                    if (ADAPTIVE_TESSELLATION) { // pieces differ in length, so the texture follows the distance along the track
+                        offsetVertex(v, along / trackwidth, 0, k, PIECE_START, outer, drop);
+                        offsetVertex(v + 1, (along + samples[k + PIECE_LENGTH]) / trackwidth, 1, k, PIECE_END, inner, drop);
+                    } else {
+                        offsetVertex(v, i % 2, 0, k, PIECE_START, outer, drop);
+                        offsetVertex(v + 1, i % 2, 1, k, PIECE_END, inner, drop);
+                    }
+                }
+
+                // the walls are 3 high, the brick texture is repeated every 3 units in adaptive mode and every piece in uniform mode
+                double s = ADAPTIVE_TESSELLATION ? along / 3 : i % 2;
+                boolean last = piece == firstPiece[to - from] - 1;
+                for (int wall = 0; wall < 2; wall++) {
+                    int v = firstVertex[lanes + wall] + 2 * piece;
+                    double offset = wall == 0 ? -trackwidth : trackwidth * (lanes - 1);
+                    offsetVertex(v, s, 0, k, PIECE_START, offset, drop);
+                    offsetVertex(v + 1, s, 1, k, PIECE_START, offset, drop - 3); //the lower vertex is just 3 meters below the surface
+                    if (last) { // the next mesh or chunk starts its wall where this one ends
+                        double end = ADAPTIVE_TESSELLATION ? (along + samples[k + PIECE_LENGTH]) / 3 : (i + 1) % 2;
+                        offsetVertex(v + 2, end, 0, k, PIECE_END, offset, drop);
+                        offsetVertex(v + 3, end, 1, k, PIECE_END, offset, drop - 3);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Sets vertex v to the point at {@code offset} along the normal of
+         * the piece at {@code samples[k]} from its start or end point, lowered
+         * by {@code drop}.
+         */
+        private void offsetVertex(int v, double s, double t, int k, int point, double offset, double drop) {
+            mesh.set(v, s, t,
+                    samples[k + point] + samples[k + PIECE_NORMAL] * offset,
+                    samples[k + point + 1] + samples[k + PIECE_NORMAL + 1] * offset,
+                    samples[k + point + 2] + drop);
+        }
+
+        /**
+         * Runs a stage for a range of trackparts, splitting large ranges.
+         */
+        private final class Task extends RecursiveAction {
+
+            private static final long serialVersionUID = 1L;
+
+            private final int stage;
+            private final int from;
+            private final int to;
+
+            Task(int stage, int from, int to) {
+                this.stage = stage;
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                if (to - from > PARTS_PER_TASK) {
+                    int middle = (from + to) >>> 1;
+                    invokeAll(new Task(stage, from, middle), new Task(stage, middle, to));
+                    return;
+                }
+                Bezier.Stepper stepper = new Bezier.Stepper();
+                for (int j = from; j < to; j++) {
+                    run(stage, j, stepper);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the position in lane {@code pos} at curve parameter
+     * {@code time} of trackpart j to {@code out[0]} .. {@code out[2]}.
+     */
+    public void robotpos(int j, double trackwidth, int pos, double time, double[] out) {
+        int type = definition.buildType[j];
+        double[] packed = definition.packed;
+        int offset = j * Bezier.DOUBLES_PER_PART;
+        double x = Bezier.coordinate(type, packed, offset, 0, time);
+        double y = Bezier.coordinate(type, packed, offset, 1, time);
+        double z = Bezier.coordinate(type, packed, offset, 2, time);
+
+        // the derivative gives the direction of the track in that position
+        double llx = Bezier.derivativeCoordinate(type, packed, offset, 0, time);
+        double lly = Bezier.derivativeCoordinate(type, packed, offset, 1, time);
+        if (llx == 0 && lly == 0) { // the derivative vanishes where a controlpoint coincides with an end point, use a short chord instead
+            double near = Math.min(Math.max(time, 0.001), 0.999);
+            llx = Bezier.coordinate(type, packed, offset, 0, near + 0.001) - Bezier.coordinate(type, packed, offset, 0, near - 0.001);
+            lly = Bezier.coordinate(type, packed, offset, 1, near + 0.001) - Bezier.coordinate(type, packed, offset, 1, near - 0.001);
+        }
+
+        double s = Math.sqrt(llx * llx + lly * lly); // the track is horizontal from each bezierpoint so the z component is not used
+        double width = trackwidth * (definition.lanes - 1.5 - pos) / s;
+        // add the origional position with the appropriate width (in the tangent direction) to place the robot on track
+        out[0] = x + lly * width;
+        out[1] = y - llx * width;
+        out[2] = z;
+    }
+
+    /**
+     * Writes the position in lane {@code lane} at {@code distance} from the
+     * start to {@code out[0]} .. {@code out[2]}. Any distance is allowed,
+     * distances beyond one lap (or negative ones) wrap around. This only reads
+     * tables that do not change after the track is built, so it can be called
+     * from any thread and in any order.
+     */
+    public void positionAt(int lane, double distance, double[] out) {
+        // the segment offset index maps the distance onto a trackpart, the table of that part onto a Bezier parameter
+        double lapDistance = arcLengths.wrap(distance);
+        int part = arcLengths.findPart(lapDistance);
+        double tracktime = arcLengths.findParameter(part, lapDistance - arcLengths.getPartStart(part));
+        robotpos(part, LANE_WIDTH, lane, tracktime, out);
+    }
+
+    /**
+     * Writes the frame of the track (see {@link FrameTable}) at
+     * {@code distance} from the start to {@code out}. Like
+     * {@link #positionAt} this can be called from any thread for any
+     * distance.
+     */
+    public void frameAt(double distance, double[] out) {
+        double lapDistance = arcLengths.wrap(distance);
+        int part = arcLengths.findPart(lapDistance);
+        frames.frameAt(part, arcLengths.findParameter(part, lapDistance - arcLengths.getPartStart(part)), out);
+    }
+
+    /**
+     * Returns a hash of the parameters that the tables and meshes of a track
+     * are built with, so that the track cache is rebuilt when one of them
+     * changes.
+     */
+    public static long parameterHash() {
+        long hash = ARC_LENGTH_SAMPLES;
+        hash = 31 * hash + ARC_LENGTH_CHORDS;
+        hash = 31 * hash + UNIFORM_STEPS;
+        hash = 31 * hash + COARSE_UNIFORM_STEPS;
+        hash = 31 * hash + MIN_SUBDIVISION_DEPTH;
+        hash = 31 * hash + MAX_SUBDIVISION_DEPTH;
+        hash = 31 * hash + PAGING_THRESHOLD;
+        hash = 31 * hash + (ADAPTIVE_TESSELLATION ? 1 : 0);
+        hash = 31 * hash + Double.doubleToLongBits(LANE_WIDTH);
+        for (int detail = DETAIL_FULL; detail <= DETAIL_COARSE; detail++) {
+            hash = 31 * hash + Double.doubleToLongBits(FLATNESS_TOLERANCE[detail]);
+            hash = 31 * hash + Double.doubleToLongBits(MAX_TURN_COS[detail]);
+        }
+        return hash;
+    }
+
+    /**
+     * Writes this track in the format of the track cache.
+     */
+    public void write(DataOutputStream out) throws IOException {
+        TrackCache.writeString(out, definition.name);
+        out.writeInt(definition.lanes);
+        out.writeLong(definition.sourceHash);
+        TrackCache.writeInts(out, definition.buildType);
+        TrackCache.writeDoubles(out, definition.packed);
+        arcLengths.write(out);
+        frames.write(out);
+        mesh.write(out);
+        out.writeInt(savedVertices);
+    }
+
+    /**
+     * Reads a track written by {@link #write} from the track cache.
+     */
+    public static Track read(ByteBuffer in) {
+        String name = TrackCache.readString(in);
+        int lanes = in.getInt();
+        long sourceHash = in.getLong();
+        int[] buildType = TrackCache.readInts(in);
+        double[] packed = TrackCache.readDoubles(in);
+        TrackDefinition definition = new TrackDefinition(name, lanes, buildType, packed, sourceHash);
+        ArcLengthTable arcLengths = ArcLengthTable.read(in);
+        FrameTable frames = FrameTable.read(in);
+        TrackMesh mesh = TrackMesh.read(in);
+        return new Track(definition, arcLengths, frames, mesh, in.getInt());
+    }
+}
@@ -0,0 +1,230 @@
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Binary file with the precomputed tracks: the arc-length tables, frame
+ * tables and tessellated meshes of every track in the track list. Reading
+ * the file is much faster than measuring and tessellating the tracks at
+ * startup, the file is memory mapped and its arrays are copied out in bulk.
+ *
+ * The file starts with a header (magic number, format version, hash of all
+ * track definitions and the number of tracks) followed by every track as
+ * written by {@link Track#write}. All values are big-endian, arrays are
+ * written as their length followed by their elements. When a track file
+ * or one of the parameters the tracks are built with changes, the hash no
+ * longer matches and the tracks are rebuilt from their definitions.
+ */
+public class TrackCache {
+
+    /**
+     * Name of the cache file in the working directory, can be changed with
+     * the system property robotrace.trackcache. An empty name turns the
+     * cache off: the tracks are then always built and never written.
+     */
+    public static final String FILE = System.getProperty("robotrace.trackcache", "tracks.bin");
+
+    /**
+     * If true, reading and writing the cache is reported on the console,
+     * like the other statistics of robotrace.stats.
+     */
+    private static final boolean STATS = Boolean.getBoolean("robotrace.stats");
+
+    /**
+     * "RRTK", marks a track cache.
+     */
+    private static final int MAGIC = 0x5252544B;
+
+    /**
+     * Version of the layout of the file and of the computations that fill
+     * it, increase it when either changes.
+     */
+    private static final int VERSION = 3;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private TrackCache() {
+    }
+
+    /**
+     * Bakes the tracks in the track list into the cache file, or into the
+     * file given as the first argument.
+     */
+    public static void main(String[] args) throws IOException {
+        File file = new File(args.length > 0 ? args[0] : FILE);
+        TrackDefinition[] definitions = TrackDefinition.loadAll();
+        write(file, definitions, build(definitions));
+        System.out.println("Baked " + definitions.length + " tracks into " + file + " (" + file.length() + " bytes)");
+    }
+
+    /**
+     * Returns the tracks for the given definitions, read from the cache file
+     * if it matches the definitions and built from the definitions
+     * otherwise.
+     */
+    public static Track[] load(TrackDefinition[] definitions) {
+        if (FILE.isEmpty()) {
+            return build(definitions);
+        }
+        File file = new File(FILE);
+        long hash = hash(definitions);
+        if (file.isFile()) {
+            try {
+                Track[] tracks = read(file, hash);
+                if (tracks != null) {
+                    return tracks;
+                }
+                if (STATS) {
+                    System.out.println("Track cache " + FILE + " is out of date, building the tracks");
+                }
+            } catch (IOException e) {
+                if (STATS) {
+                    System.out.println("Could not read track cache " + FILE + ": " + e.getMessage());
+                }
+            } catch (RuntimeException e) { // a truncated file ends in a BufferUnderflowException
+                if (STATS) {
+                    System.out.println("Could not read track cache " + FILE + ": " + e);
+                }
+            }
+        }
+        Track[] tracks = build(definitions);
+        try {
+            write(file, definitions, tracks);
+            if (STATS) {
+                System.out.println("Baked the tracks into " + FILE);
+            }
+        } catch (IOException e) {
+            if (STATS) {
+                System.out.println("Could not write track cache " + FILE + ": " + e.getMessage());
+            }
+        }
+        return tracks;
+    }
+
+    /**
+     * Builds the tracks from their definitions.
+     */
+    public static Track[] build(TrackDefinition[] definitions) {
+        Track[] tracks = new Track[definitions.length];
+        for (int i = 0; i < definitions.length; i++) {
+            tracks[i] = new Track(definitions[i]);
+        }
+        return tracks;
+    }
+
+    /**
+     * Writes the tracks to the given file.
+     */
+    public static void write(File file, TrackDefinition[] definitions, Track[] tracks) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(hash(definitions));
+            out.writeInt(tracks.length);
+            for (Track track : tracks) {
+                track.write(out);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Reads the tracks from the given file, or returns null if the file was
+     * written for other definitions or by another version.
+     */
+    public static Track[] read(File file, long hash) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.getInt() != MAGIC) {
+                throw new IOException("not a track cache");
+            }
+            if (in.getInt() != VERSION || in.getLong() != hash) {
+                return null;
+            }
+            Track[] tracks = new Track[in.getInt()];
+            for (int i = 0; i < tracks.length; i++) {
+                tracks[i] = Track.read(in);
+            }
+            return tracks;
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Returns a hash of all definitions, in order, and of the parameters the
+     * tracks are built with.
+     */
+    public static long hash(TrackDefinition[] definitions) {
+        long hash = 31 * Track.parameterHash() + definitions.length;
+        for (TrackDefinition definition : definitions) {
+            hash = 31 * hash + definition.sourceHash;
+        }
+        return hash;
+    }
+
+    public static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    public static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    public static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    public static int[] readInts(ByteBuffer in) {
+        int[] values = new int[in.getInt()];
+        in.asIntBuffer().get(values);
+        in.position(in.position() + 4 * values.length);
+        return values;
+    }
+
+    public static void writeFloats(DataOutputStream out, float[] values) throws IOException {
+        out.writeInt(values.length);
+        for (float value : values) {
+            out.writeFloat(value);
+        }
+    }
+
+    public static float[] readFloats(ByteBuffer in) {
+        float[] values = new float[in.getInt()];
+        in.asFloatBuffer().get(values);
+        in.position(in.position() + 4 * values.length);
+        return values;
+    }
+
+    public static void writeDoubles(DataOutputStream out, double[] values) throws IOException {
+        out.writeInt(values.length);
+        for (double value : values) {
+            out.writeDouble(value);
+        }
+    }
+
+    public static double[] readDoubles(ByteBuffer in) {
+        double[] values = new double[in.getInt()];
+        in.asDoubleBuffer().get(values);
+        in.position(in.position() + 8 * values.length);
+        return values;
+    }
+}
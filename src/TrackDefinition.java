@@ -0,0 +1,180 @@
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Definition of a race track as it is read from a track file: a name and a
+ * list of trackparts, each with a build command and control points. See
+ * tracks/o.track for the file format.
+ */
+public class TrackDefinition {
+
+    /**
+     * Folder (relative to this class) that holds the track files and the list
+     * of tracks.
+     */
+    public static final String FOLDER = "tracks/";
+
+    /**
+     * File that lists the track files in the order of their track numbers.
+     */
+    public static final String TRACK_LIST = "tracks.txt";
+
+    /**
+     * Keywords of the build commands, indexed by build command.
+     */
+    private static final String[] COMMANDS = {"line", "quadratic", "cubic"};
+
+    /**
+     * Number of lanes of a track whose file does not give it.
+     */
+    public static final int DEFAULT_LANES = 4;
+
+    public final String name;
+
+    /**
+     * Number of lanes, lane 0 is the outermost lane.
+     */
+    public final int lanes;
+
+    /**
+     * Build command of every trackpart, see {@link Bezier}.
+     */
+    public final int[] buildType;
+
+    /**
+     * Packed control points of every trackpart, see {@link Bezier}.
+     */
+    public final double[] packed;
+
+    /**
+     * Hash of the text of the definition, used to notice that a baked track
+     * no longer matches its definition.
+     */
+    public final long sourceHash;
+
+    public TrackDefinition(String name, int lanes, int[] buildType, double[] packed, long sourceHash) {
+        this.name = name;
+        this.lanes = lanes;
+        this.buildType = buildType;
+        this.packed = packed;
+        this.sourceHash = sourceHash;
+    }
+
+    /**
+     * Returns the number of trackparts, including the connecting piece.
+     */
+    public int getPartCount() {
+        return buildType.length;
+    }
+
+    /**
+     * Reads all tracks in the track list, in the order of their track
+     * numbers.
+     */
+    public static TrackDefinition[] loadAll() throws IOException {
+        ArrayList<TrackDefinition> tracks = new ArrayList<TrackDefinition>();
+        for (String line : readLines(TRACK_LIST)) {
+            String file = stripComment(line);
+            if (!file.isEmpty()) {
+                tracks.add(load(file));
+            }
+        }
+        return tracks.toArray(new TrackDefinition[tracks.size()]);
+    }
+
+    /**
+     * Reads the track file with the given name from the track folder.
+     */
+    public static TrackDefinition load(String file) throws IOException {
+        String name = file;
+        int lanes = DEFAULT_LANES;
+        int[] buildType = new int[8];
+        double[] packed = new double[8 * Bezier.DOUBLES_PER_PART];
+        int parts = 0;
+        long hash = 17;
+
+        int lineNr = 0;
+        for (String raw : readLines(file)) {
+            lineNr++;
+            hash = 31 * hash + raw.hashCode();
+            String line = stripComment(raw);
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] words = line.split("\\s+");
+            if (words[0].equals("name")) {
+                name = line.substring(4).trim();
+                continue;
+            }
+            if (words[0].equals("lanes")) {
+                try {
+                    lanes = words.length == 2 ? Integer.parseInt(words[1]) : 0;
+                } catch (NumberFormatException e) {
+                    lanes = 0;
+                }
+                if (lanes < 1) {
+                    throw new IOException(file + ":" + lineNr + ": lanes needs a positive number of lanes");
+                }
+                continue;
+            }
+
+            int command = Arrays.asList(COMMANDS).indexOf(words[0]);
+            if (command < 0) {
+                throw new IOException(file + ":" + lineNr + ": unknown build command " + words[0]);
+            }
+            //A line has 2 points, a quadratic curve 3 and a cubic curve 4
+            int points = command + 2;
+            if (words.length != 1 + 3 * points) {
+                throw new IOException(file + ":" + lineNr + ": a " + words[0] + " needs " + 3 * points + " coordinates");
+            }
+            if (parts == buildType.length) {
+                buildType = Arrays.copyOf(buildType, 2 * parts);
+                packed = Arrays.copyOf(packed, 2 * parts * Bezier.DOUBLES_PER_PART);
+            }
+            buildType[parts] = command;
+            for (int i = 0; i < 3 * points; i++) {
+                try {
+                    packed[parts * Bezier.DOUBLES_PER_PART + i] = Double.parseDouble(words[i + 1]);
+                } catch (NumberFormatException e) {
+                    throw new IOException(file + ":" + lineNr + ": " + words[i + 1] + " is not a number");
+                }
+            }
+            parts++;
+        }
+
+        //A track needs at least one trackpart to drive on and the connecting piece
+        if (parts < 2) {
+            throw new IOException(file + ": a track needs at least two trackparts");
+        }
+        return new TrackDefinition(name, lanes, Arrays.copyOf(buildType, parts),
+                Arrays.copyOf(packed, parts * Bezier.DOUBLES_PER_PART), hash);
+    }
+
+    private static String stripComment(String line) {
+        int comment = line.indexOf('#');
+        return (comment < 0 ? line : line.substring(0, comment)).trim();
+    }
+
+    private static ArrayList<String> readLines(String file) throws IOException {
+        InputStream in = TrackDefinition.class.getResourceAsStream(FOLDER + file);
+        if (in == null) {
+            throw new IOException("Track file " + FOLDER + file + " not found");
+        }
+        ArrayList<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,346 @@
+
+import com.jogamp.common.nio.Buffers;
+import com.jogamp.opengl.util.texture.Texture;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import javax.media.opengl.GL2;
+import static javax.media.opengl.GL2.*;
+
+/**
+ * Tessellated geometry of a race track. The vertices of all lanes and walls
+ * are stored once in an interleaved float array (texture coordinate followed
+ * by position) and uploaded to a vertex buffer object, after which a frame
+ * draws the whole track with one glDrawArrays call per lane or wall.
+ *
+ * Every range is split in blocks of BLOCK_QUADS quads with a bounding
+ * sphere. Blocks outside the view frustum are skipped, and the runs of
+ * consecutive visible blocks are drawn with one call each.
+ */
+public class TrackMesh {
+
+    /**
+     * Number of floats per vertex: s, t, x, y, z.
+     */
+    public static final int FLOATS_PER_VERTEX = 5;
+
+    /**
+     * Surface of a range of vertices, selects the texture it is drawn with.
+     */
+    public static final int SURFACE_TRACK = 0;
+    public static final int SURFACE_BRICK = 1;
+
+    /**
+     * Number of quads in a block that is culled as a whole.
+     */
+    public static final int BLOCK_QUADS = 32;
+
+    /**
+     * Interleaved vertex data, only the first vertexCount vertices are used.
+     */
+    private float[] vertices = new float[1024 * FLOATS_PER_VERTEX];
+    private int vertexCount = 0;
+
+    /**
+     * Ranges of vertices that are drawn with a single call. For every range
+     * the primitive mode, first vertex, vertex count, surface and lane (which
+     * selects the color) are stored.
+     */
+    private int[] rangeMode = new int[8];
+    private int[] rangeFirst = new int[8];
+    private int[] rangeCount = new int[8];
+    private int[] rangeSurface = new int[8];
+    private int[] rangeLane = new int[8];
+    private int ranges = 0;
+
+    /**
+     * Blocks of every range: the first block of range r is
+     * rangeBlock[r], the first vertex and vertex count of every block, and
+     * its bounding sphere as x, y, z and the radius. Computed on upload.
+     */
+    private int[] rangeBlock;
+    private int[] blockFirst;
+    private int[] blockCount;
+    private float[] blockBounds;
+
+    /**
+     * Name of the vertex buffer object, 0 as long as it is not uploaded.
+     */
+    private int vbo = 0;
+
+    /**
+     * Starts a new range of vertices that is drawn with the given primitive
+     * mode, surface and lane color.
+     */
+    public void begin(int mode, int surface, int lane) {
+        if (ranges == rangeMode.length) {
+            int size = Math.max(8, 2 * ranges);
+            rangeMode = Arrays.copyOf(rangeMode, size);
+            rangeFirst = Arrays.copyOf(rangeFirst, size);
+            rangeCount = Arrays.copyOf(rangeCount, size);
+            rangeSurface = Arrays.copyOf(rangeSurface, size);
+            rangeLane = Arrays.copyOf(rangeLane, size);
+        }
+        rangeMode[ranges] = mode;
+        rangeFirst[ranges] = vertexCount;
+        rangeCount[ranges] = 0;
+        rangeSurface[ranges] = surface;
+        rangeLane[ranges] = lane;
+        ranges++;
+    }
+
+    /**
+     * Adds a vertex with texture coordinate ({@code s}, {@code t}) to the
+     * current range.
+     */
+    public void vertex(double s, double t, double x, double y, double z) {
+        ensureCapacity(vertexCount + 1);
+        set(vertexCount, s, t, x, y, z);
+        vertexCount++;
+        rangeCount[ranges - 1]++;
+    }
+
+    /**
+     * Adds a range of {@code count} vertices that are filled in later with
+     * {@link #set}, and returns the index of its first vertex.
+     */
+    public int reserve(int mode, int surface, int lane, int count) {
+        begin(mode, surface, lane);
+        ensureCapacity(vertexCount + count);
+        int first = vertexCount;
+        vertexCount += count;
+        rangeCount[ranges - 1] = count;
+        return first;
+    }
+
+    /**
+     * Sets the vertex with the given index. Different vertices can be set
+     * from different threads at the same time, as long as no vertices are
+     * added meanwhile.
+     */
+    public void set(int index, double s, double t, double x, double y, double z) {
+        int i = index * FLOATS_PER_VERTEX;
+        vertices[i] = (float) s;
+        vertices[i + 1] = (float) t;
+        vertices[i + 2] = (float) x;
+        vertices[i + 3] = (float) y;
+        vertices[i + 4] = (float) z;
+    }
+
+    private void ensureCapacity(int count) {
+        if (count * FLOATS_PER_VERTEX > vertices.length) {
+            vertices = Arrays.copyOf(vertices, Math.max(2 * vertices.length, count * FLOATS_PER_VERTEX));
+        }
+    }
+
+    /**
+     * Returns the number of vertices in this mesh.
+     */
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    /**
+     * Returns the number of ranges in this mesh.
+     */
+    public int getRangeCount() {
+        return ranges;
+    }
+
+    /**
+     * Returns the first vertex of the given range.
+     */
+    public int getRangeFirst(int range) {
+        return rangeFirst[range];
+    }
+
+    /**
+     * Returns the number of vertices of the given range.
+     */
+    public int getRangeVertexCount(int range) {
+        return rangeCount[range];
+    }
+
+    /**
+     * Returns the surface of the given range.
+     */
+    public int getRangeSurface(int range) {
+        return rangeSurface[range];
+    }
+
+    /**
+     * Copies vertex {@code index} (s, t, x, y, z) to {@code out}.
+     */
+    public void getVertex(int index, float[] out) {
+        System.arraycopy(vertices, index * FLOATS_PER_VERTEX, out, 0, FLOATS_PER_VERTEX);
+    }
+
+    /**
+     * Copies the vertices to a vertex buffer object.
+     */
+    public void upload(GL2 gl) {
+        int[] names = new int[1];
+        gl.glGenBuffers(1, names, 0);
+        vbo = names[0];
+        gl.glBindBuffer(GL_ARRAY_BUFFER, vbo);
+        int floats = vertexCount * FLOATS_PER_VERTEX;
+        gl.glBufferData(GL_ARRAY_BUFFER, floats * Buffers.SIZEOF_FLOAT,
+                Buffers.newDirectFloatBuffer(vertices, 0, floats), GL_STATIC_DRAW);
+        gl.glBindBuffer(GL_ARRAY_BUFFER, 0);
+        split();
+    }
+
+    /**
+     * Splits every range in blocks and computes their bounding spheres.
+     * Blocks of a quad strip share their first two vertices with the end of
+     * the previous block, so that runs of blocks join up.
+     */
+    private void split() {
+        rangeBlock = new int[ranges + 1];
+        int blocks = 0;
+        for (int r = 0; r < ranges; r++) {
+            rangeBlock[r] = blocks;
+            blocks += Math.max(1, (rangeCount[r] - overlap(r) + step(r) - 1) / step(r));
+        }
+        rangeBlock[ranges] = blocks;
+        blockFirst = new int[blocks];
+        blockCount = new int[blocks];
+        blockBounds = new float[4 * blocks];
+
+        for (int r = 0; r < ranges; r++) {
+            int end = rangeFirst[r] + rangeCount[r];
+            for (int b = rangeBlock[r]; b < rangeBlock[r + 1]; b++) {
+                int first = rangeFirst[r] + (b - rangeBlock[r]) * step(r);
+                int last = Math.min(first + step(r) + overlap(r), end);
+                blockFirst[b] = first;
+                blockCount[b] = Math.max(0, last - first);
+
+                float[] min = {Float.MAX_VALUE, Float.MAX_VALUE, Float.MAX_VALUE};
+                float[] max = {-Float.MAX_VALUE, -Float.MAX_VALUE, -Float.MAX_VALUE};
+                for (int v = first; v < last; v++) {
+                    for (int k = 0; k < 3; k++) {
+                        float value = vertices[v * FLOATS_PER_VERTEX + 2 + k];
+                        min[k] = Math.min(min[k], value);
+                        max[k] = Math.max(max[k], value);
+                    }
+                }
+                float radius = 0;
+                for (int k = 0; k < 3; k++) {
+                    blockBounds[4 * b + k] = (min[k] + max[k]) / 2;
+                    radius += (max[k] - min[k]) * (max[k] - min[k]) / 4;
+                }
+                blockBounds[4 * b + 3] = (float) Math.sqrt(radius);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of vertices between the starts of the blocks of
+     * range r.
+     */
+    private int step(int r) {
+        if (rangeMode[r] == GL_QUAD_STRIP) {
+            return 2 * BLOCK_QUADS;
+        } else if (rangeMode[r] == GL_QUADS) {
+            return 4 * BLOCK_QUADS;
+        }
+        return Math.max(1, rangeCount[r]);
+    }
+
+    /**
+     * Returns the number of vertices a block of range r shares with the
+     * next block.
+     */
+    private int overlap(int r) {
+        return rangeMode[r] == GL_QUAD_STRIP ? 2 : 0;
+    }
+
+    /**
+     * Draws the blocks of the mesh inside the frustum, uploading the mesh
+     * first if that did not happen yet. Lane {@code i} is drawn with
+     * {@code laneColors[i]}.
+     */
+    public void draw(GL2 gl, Texture track, Texture brick, float[][] laneColors, Frustum frustum) {
+        if (vbo == 0) {
+            upload(gl);
+        }
+        gl.glBindBuffer(GL_ARRAY_BUFFER, vbo);
+        gl.glInterleavedArrays(GL_T2F_V3F, 0, 0);
+
+        int boundSurface = -1;
+        for (int r = 0; r < ranges; r++) {
+            boolean started = false;
+            int run = -1;
+            for (int b = rangeBlock[r]; b <= rangeBlock[r + 1]; b++) {
+                boolean visible = b < rangeBlock[r + 1] && frustum.sphereVisible(Frustum.TRACK,
+                        blockBounds[4 * b], blockBounds[4 * b + 1], blockBounds[4 * b + 2], blockBounds[4 * b + 3]);
+                if (visible && run < 0) {
+                    run = b;
+                } else if (!visible && run >= 0) {
+                    if (!started) { // the state of a range is only set when some of it is drawn
+                        started = true;
+                        float[] color = laneColors[rangeLane[r] % laneColors.length];
+                        gl.glColor3f(color[0], color[1], color[2]);
+                        if (rangeSurface[r] != boundSurface) {
+                            boundSurface = rangeSurface[r];
+                            if (boundSurface == SURFACE_TRACK) {
+                                track.bind(gl);
+                                gl.glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_REPEAT);
+                            } else {
+                                brick.bind(gl);
+                            }
+                        }
+                    }
+                    int first = blockFirst[run];
+                    gl.glDrawArrays(rangeMode[r], first, blockFirst[b - 1] + blockCount[b - 1] - first);
+                    run = -1;
+                }
+            }
+        }
+
+        gl.glDisableClientState(GL_TEXTURE_COORD_ARRAY);
+        gl.glDisableClientState(GL_VERTEX_ARRAY);
+        gl.glBindBuffer(GL_ARRAY_BUFFER, 0);
+    }
+
+    /**
+     * Deletes the vertex buffer object, the mesh is uploaded again when it
+     * is drawn next.
+     */
+    public void dispose(GL2 gl) {
+        if (vbo != 0) {
+            gl.glDeleteBuffers(1, new int[]{vbo}, 0);
+            vbo = 0;
+        }
+    }
+
+    /**
+     * Writes the vertices and ranges of this mesh in the format of the track
+     * cache.
+     */
+    public void write(DataOutputStream out) throws IOException {
+        TrackCache.writeFloats(out, Arrays.copyOf(vertices, vertexCount * FLOATS_PER_VERTEX));
+        TrackCache.writeInts(out, Arrays.copyOf(rangeMode, ranges));
+        TrackCache.writeInts(out, Arrays.copyOf(rangeFirst, ranges));
+        TrackCache.writeInts(out, Arrays.copyOf(rangeCount, ranges));
+        TrackCache.writeInts(out, Arrays.copyOf(rangeSurface, ranges));
+        TrackCache.writeInts(out, Arrays.copyOf(rangeLane, ranges));
+    }
+
+    /**
+     * Reads a mesh written by {@link #write} from the track cache.
+     */
+    public static TrackMesh read(ByteBuffer in) {
+        TrackMesh mesh = new TrackMesh();
+        mesh.vertices = TrackCache.readFloats(in);
+        mesh.vertexCount = mesh.vertices.length / FLOATS_PER_VERTEX;
+        mesh.rangeMode = TrackCache.readInts(in);
+        mesh.rangeFirst = TrackCache.readInts(in);
+        mesh.rangeCount = TrackCache.readInts(in);
+        mesh.rangeSurface = TrackCache.readInts(in);
+        mesh.rangeLane = TrackCache.readInts(in);
+        mesh.ranges = mesh.rangeMode.length;
+        return mesh;
+    }
+}
@@ -0,0 +1,291 @@
+
+import com.jogamp.opengl.util.texture.Texture;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import javax.media.opengl.GL2;
+import robotrace.Vector;
+
+/**
+ * Pages the geometry of a large track in and out around the camera. The
+ * track is split in chunks of CHUNK_PARTS trackparts. Chunks near the eye are
+ * tessellated at full detail, chunks further away at the coarse level, and
+ * chunks behind the camera or beyond the far clipping plane are not needed
+ * at all. Chunks are tessellated on
+ * a background thread, and uploaded to their own vertex buffer object and
+ * swapped in on the OpenGL thread. When the resident chunks hold more than
+ * VERTEX_BUDGET vertices, the least recently needed chunks that are not
+ * needed now are evicted, so the geometry stays within the budget however
+ * long the track is.
+ *
+ * Only the geometry is paged. The arc-length and frame tables of the
+ * {@link Track} cover the whole track, as the robots can be anywhere on it,
+ * and take about 19 KB per trackpart (ARC_LENGTH_SAMPLES + 1 samples of 12
+ * doubles), so they grow with the length of the track. A pager owns vertex
+ * buffer objects and a thread; call {@link #dispose} when it is no longer
+ * drawn.
+ */
+public class TrackPager {
+
+    /**
+     * Number of trackparts in a chunk.
+     */
+    public static final int CHUNK_PARTS = 16;
+
+    /**
+     * Chunks closer to the eye than this are tessellated at full detail.
+     */
+    public static final double FULL_DETAIL_DISTANCE = 200;
+
+    /**
+     * Largest number of vertices the resident chunks may hold together,
+     * unless more chunks than that are needed now.
+     */
+    public static final int VERTEX_BUDGET = 400000;
+
+    /**
+     * Level of a chunk that is not resident or not needed.
+     */
+    private static final int NONE = -1;
+
+    /**
+     * Chunk that finished tessellating on the background thread.
+     */
+    private static class Result {
+
+        final int chunk;
+        final int detail;
+        final TrackMesh mesh;
+
+        Result(int chunk, int detail, TrackMesh mesh) {
+            this.chunk = chunk;
+            this.detail = detail;
+            this.mesh = mesh;
+        }
+    }
+
+    private final Track track;
+    private final int chunks;
+
+    /**
+     * Bounding sphere of every chunk: the center as x, y, z and the radius.
+     */
+    private final double[] bounds;
+
+    /**
+     * Resident mesh of every chunk and its level of detail.
+     */
+    private final TrackMesh[] meshes;
+    private final int[] resident;
+
+    /**
+     * Level of detail every chunk is being tessellated at, or NONE.
+     */
+    private final int[] pending;
+
+    /**
+     * Level of detail every chunk needs for the current eye, or NONE.
+     */
+    private final int[] wanted;
+
+    /**
+     * Resident chunks, least recently needed first, with their vertex
+     * counts.
+     */
+    private final LinkedHashMap<Integer, Integer> lru = new LinkedHashMap<Integer, Integer>(16, 0.75f, true);
+    private int residentVertices = 0;
+
+    private final ExecutorService executor;
+    private final ConcurrentLinkedQueue<Result> finished = new ConcurrentLinkedQueue<Result>();
+
+    /**
+     * Number of chunks that were evicted so far.
+     */
+    private int evictions = 0;
+
+    public TrackPager(Track track) {
+        this.track = track;
+        int parts = track.definition.getPartCount();
+        this.chunks = (parts + CHUNK_PARTS - 1) / CHUNK_PARTS;
+        this.bounds = new double[4 * chunks];
+        this.meshes = new TrackMesh[chunks];
+        this.resident = new int[chunks];
+        this.pending = new int[chunks];
+        this.wanted = new int[chunks];
+        Arrays.fill(resident, NONE);
+        Arrays.fill(pending, NONE);
+        Arrays.fill(wanted, NONE);
+
+        // the curves lie within the bounding box of their control points, the lanes and walls lie around them
+        double margin = Track.LANE_WIDTH * (track.definition.lanes + 1) + 3;
+        double[] packed = track.definition.packed;
+        for (int c = 0; c < chunks; c++) {
+            double[] min = {Double.MAX_VALUE, Double.MAX_VALUE, Double.MAX_VALUE};
+            double[] max = {-Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+            for (int j = c * CHUNK_PARTS; j < Math.min((c + 1) * CHUNK_PARTS, parts); j++) {
+                int points = track.definition.buildType[j] + 2;
+                for (int p = 0; p < points; p++) {
+                    for (int k = 0; k < 3; k++) {
+                        double value = packed[j * Bezier.DOUBLES_PER_PART + 3 * p + k];
+                        min[k] = Math.min(min[k], value);
+                        max[k] = Math.max(max[k], value);
+                    }
+                }
+            }
+            double radius = 0;
+            for (int k = 0; k < 3; k++) {
+                bounds[4 * c + k] = (min[k] + max[k]) / 2;
+                radius += (max[k] - min[k]) * (max[k] - min[k]) / 4;
+            }
+            bounds[4 * c + 3] = Math.sqrt(radius) + margin;
+        }
+
+        executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Track pager");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Decides which chunks are needed for a camera at {@code eye} looking at
+     * {@code center} that sees up to {@code far}, and starts tessellating the
+     * chunks that are not resident at the level they need.
+     */
+    public void update(Vector eye, Vector center, double far) {
+        Vector view = center.subtract(eye);
+        double viewLength = view.length();
+        for (int c = 0; c < chunks; c++) {
+            double dx = bounds[4 * c] - eye.x();
+            double dy = bounds[4 * c + 1] - eye.y();
+            double dz = bounds[4 * c + 2] - eye.z();
+            double radius = bounds[4 * c + 3];
+            double distance = Math.sqrt(dx * dx + dy * dy + dz * dz) - radius;
+            // distance of the chunk in front of the eye, negative if it lies entirely behind the camera
+            double ahead = viewLength > 0 ? (dx * view.x() + dy * view.y() + dz * view.z()) / viewLength + radius : 0;
+
+            if (distance < FULL_DETAIL_DISTANCE) {
+                wanted[c] = Track.DETAIL_FULL;
+            } else if (ahead >= 0 && distance < far) {
+                wanted[c] = Track.DETAIL_COARSE;
+            } else {
+                wanted[c] = NONE;
+            }
+
+            if (wanted[c] == NONE) {
+                continue;
+            }
+            if (resident[c] != NONE) {
+                lru.get(c); // the chunk was needed now
+            }
+            if (resident[c] != wanted[c] && pending[c] != wanted[c]) {
+                request(c, wanted[c]);
+            }
+        }
+    }
+
+    /**
+     * Tessellates chunk c at the given level of detail on the background
+     * thread.
+     */
+    private void request(final int c, final int detail) {
+        pending[c] = detail;
+        final int from = c * CHUNK_PARTS;
+        final int to = Math.min(from + CHUNK_PARTS, track.definition.getPartCount());
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                finished.add(new Result(c, detail, track.buildChunk(from, to, detail)));
+            }
+        });
+    }
+
+    /**
+     * Swaps in the chunks that finished tessellating, evicts chunks when the
+     * budget is exceeded and draws the resident chunks inside the frustum.
+     */
+    public void draw(GL2 gl, Texture trackTexture, Texture brick, float[][] laneColors, Frustum frustum) {
+        collect(gl);
+        for (int c = 0; c < chunks; c++) {
+            if (meshes[c] != null && frustum.sphereVisible(Frustum.TRACK,
+                    bounds[4 * c], bounds[4 * c + 1], bounds[4 * c + 2], bounds[4 * c + 3])) {
+                meshes[c].draw(gl, trackTexture, brick, laneColors, frustum);
+            }
+        }
+    }
+
+    /**
+     * Swaps in the chunks that finished tessellating and evicts the least
+     * recently needed chunks that are not needed now while the budget is
+     * exceeded.
+     */
+    private void collect(GL2 gl) {
+        Result result;
+        while ((result = finished.poll()) != null) {
+            int c = result.chunk;
+            if (pending[c] != result.detail) { // a different level was requested meanwhile
+                continue;
+            }
+            pending[c] = NONE;
+            evict(gl, c);
+            meshes[c] = result.mesh;
+            resident[c] = result.detail;
+            lru.put(c, result.mesh.getVertexCount());
+            residentVertices += result.mesh.getVertexCount();
+        }
+
+        Iterator<Integer> eldest = new ArrayList<Integer>(lru.keySet()).iterator();
+        while (residentVertices > VERTEX_BUDGET && eldest.hasNext()) {
+            int c = eldest.next();
+            if (wanted[c] == NONE) {
+                evict(gl, c);
+                evictions++;
+            }
+        }
+    }
+
+    /**
+     * Deletes the resident mesh of chunk c, if any.
+     */
+    private void evict(GL2 gl, int c) {
+        if (meshes[c] == null) {
+            return;
+        }
+        residentVertices -= lru.remove(c);
+        meshes[c].dispose(gl);
+        meshes[c] = null;
+        resident[c] = NONE;
+    }
+
+    /**
+     * Returns the number of vertices of the resident chunks.
+     */
+    public int getResidentVertices() {
+        return residentVertices;
+    }
+
+    /**
+     * Returns the number of chunks that were evicted so far.
+     */
+    public int getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Deletes all resident meshes and stops the background thread.
+     */
+    public void dispose(GL2 gl) {
+        executor.shutdownNow();
+        for (int c = 0; c < chunks; c++) {
+            evict(gl, c);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+import java.lang.management.ManagementFactory;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the allocation free Bezier kernel.
+ */
+public class BezierTest {
+
+    /**
+     * A line, a quadratic and a cubic trackpart, packed.
+     */
+    private static final int[] TYPES = {Bezier.LINE, Bezier.QUADRATIC, Bezier.CUBIC};
+    private static final double[] PACKED = {
+        -40, -3, 0, -40, 3, 0, 0, 0, 0, 0, 0, 0,
+        0, 0, 0, 60, 20, 5, 30, 60, 0, 0, 0, 0,
+        -40, 0, 0, 40, 0, 0, -40, 40, 10, 40, 40, -10};
+
+    private static final int STEPS = 100;
+
+    private final Bezier.Stepper stepper = new Bezier.Stepper();
+    private final double[] point = new double[3];
+    private final double[] exact = new double[3];
+
+    /**
+     * Samples every trackpart with the stepper and with Bezier.point, and
+     * returns the largest distance between the two in any coordinate.
+     */
+    private double sampleAll() {
+        double error = 0;
+        for (int j = 0; j < TYPES.length; j++) {
+            stepper.start(TYPES[j], PACKED, j * Bezier.DOUBLES_PER_PART, STEPS);
+            for (int i = 0; i <= STEPS; i++) {
+                stepper.next(point, 0);
+                Bezier.point(TYPES[j], PACKED, j * Bezier.DOUBLES_PER_PART, (double) i / STEPS, exact, 0);
+                for (int k = 0; k < 3; k++) {
+                    error = Math.max(error, Math.abs(point[k] - exact[k]));
+                }
+            }
+        }
+        return error;
+    }
+
+    @Test
+    public void forwardDifferencingMatchesPoint() {
+        assertEquals(0, sampleAll(), 1e-9);
+    }
+
+    @Test
+    public void samplingAllocatesNothing() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        // warm up, so that the loops are compiled and nothing is allocated lazily anymore
+        for (int i = 0; i < 20000; i++) {
+            sampleAll();
+        }
+        // the measurement itself may allocate, measure that first
+        long before = threads.getThreadAllocatedBytes(thread);
+        long after = threads.getThreadAllocatedBytes(thread);
+        long overhead = after - before;
+
+        before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < 1000; i++) {
+            sampleAll();
+        }
+        after = threads.getThreadAllocatedBytes(thread);
+        assertEquals(0, after - before - overhead);
+    }
+}
@@ -0,0 +1,110 @@
+import java.lang.management.ManagementFactory;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the rows of the built-in terrain against its heightAt.
+ */
+public class CosineHillsTest {
+
+    /**
+     * A row as long as that of a query tile, with the spacing of a fine
+     * terrain chunk.
+     */
+    private static final int N = 65;
+    private static final float DY = 0.025f;
+    private static final int ROWS = 64;
+
+    private final CosineHills hills = new CosineHills();
+    private final float[] row = new float[N];
+    private final float[] scratch = new float[N];
+
+    /**
+     * Evaluates ROWS rows across the terrain, and returns the largest
+     * difference with heightAt if {@code compare} is set.
+     */
+    private float rows(boolean compare) {
+        float error = 0;
+        for (int i = 0; i < ROWS; i++) {
+            float x = -20 + i * 0.7f;
+            float y = -30 + i * 0.3f;
+            hills.heightsAt(x, y, DY, N, row, 0, scratch);
+            if (compare) {
+                for (int j = 0; j < N; j++) {
+                    error = Math.max(error, Math.abs(row[j] - hills.heightAt(x, y + j * DY)));
+                }
+            }
+        }
+        return error;
+    }
+
+    /**
+     * Evaluates the same points as {@link #rows} with heightAt.
+     */
+    private float points() {
+        float sum = 0;
+        for (int i = 0; i < ROWS; i++) {
+            float x = -20 + i * 0.7f;
+            float y = -30 + i * 0.3f;
+            for (int j = 0; j < N; j++) {
+                sum += hills.heightAt(x, y + j * DY);
+            }
+        }
+        return sum;
+    }
+
+    @Test
+    public void rowsMatchHeightAt() {
+        // the fast cosine is off by at most a few millionths
+        assertEquals(0, rows(true), 5e-6);
+    }
+
+    @Test
+    public void rowsAllocateNothing() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        for (int i = 0; i < 20000; i++) {
+            rows(false);
+        }
+        long before = threads.getThreadAllocatedBytes(thread);
+        long after = threads.getThreadAllocatedBytes(thread);
+        long overhead = after - before;
+
+        before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < 1000; i++) {
+            rows(false);
+        }
+        after = threads.getThreadAllocatedBytes(thread);
+        assertEquals(0, after - before - overhead);
+    }
+
+    /**
+     * Prints the time per point of heightAt and of the rows, there is no
+     * bound on it as the test machines differ too much.
+     */
+    @Test
+    public void compareThroughput() {
+        float sink = 0;
+        for (int i = 0; i < 20000; i++) {
+            sink += points();
+            rows(false);
+        }
+        int repeats = 5000;
+        long start = System.nanoTime();
+        for (int i = 0; i < repeats; i++) {
+            sink += points();
+        }
+        long scalar = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < repeats; i++) {
+            rows(false);
+            sink += row[i % N];
+        }
+        long batch = System.nanoTime() - start;
+        double count = (double) repeats * ROWS * N;
+        System.out.printf("heightAt %.1f ns, heightsAt %.1f ns per point, fast cosine %b%n",
+                scalar / count, batch / count, CosineHills.FAST_COSINE);
+        // uses the sums, so that the loops are not left out
+        assertFalse(Float.isNaN(sink));
+    }
+}
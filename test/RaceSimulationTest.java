@@ -0,0 +1,130 @@
+import java.lang.management.ManagementFactory;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the legs of the race simulation.
+ */
+public class RaceSimulationTest {
+
+    private static final int ROBOTS = 64;
+
+    /**
+     * Walk cycle offset of every leg in the order of the pose, as walkAnim
+     * gave them: fore left, fore right, hind left, hind right.
+     */
+    private static final double[] WALK_OFFSET = {0, 0.8, 1.2, 0.4};
+
+    private final RaceSimulation race = new RaceSimulation(ROBOTS, 1);
+
+    /**
+     * Checks the pose of every robot against the angles that walkAnim and
+     * animateLeg computed from the distance the robot travelled.
+     */
+    private void assertWalkAnimPoses() {
+        for (int i = 0; i < ROBOTS; i++) {
+            double t = race.distance[i] / 8;
+            for (int leg = 0; leg < 4; leg++) {
+                double angle = 35 * Math.sin((1 / 5d) * 2 * Math.PI * (t + WALK_OFFSET[leg]));
+                double lower = angle < 0 ? -angle : 0.5 * angle;
+                assertEquals(angle, race.pose[i * RaceSimulation.POSE_SIZE + 2 * leg], 0.01);
+                assertEquals(lower, race.pose[i * RaceSimulation.POSE_SIZE + 2 * leg + 1], 0.01);
+            }
+        }
+    }
+
+    @Test
+    public void gaitMatchesWalkAnim() {
+        for (int tick = 1; tick <= 500; tick++) {
+            race.advance(tick * 0.037);
+            assertWalkAnimPoses();
+        }
+    }
+
+    @Test
+    public void posingAllocatesNothing() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        int[] robots = new int[ROBOTS];
+        for (int i = 0; i < ROBOTS; i++) {
+            robots[i] = i;
+        }
+        double time = 0;
+        // warm up, so that the loops are compiled
+        for (int i = 0; i < 20000; i++) {
+            time += 0.01;
+            race.move(time);
+            race.pose(robots, ROBOTS);
+        }
+        long before = threads.getThreadAllocatedBytes(thread);
+        long after = threads.getThreadAllocatedBytes(thread);
+        long overhead = after - before;
+
+        before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < 1000; i++) {
+            time += 0.01;
+            race.move(time);
+            race.pose(robots, ROBOTS);
+            race.advance(time + 0.005);
+        }
+        after = threads.getThreadAllocatedBytes(thread);
+        assertEquals(0, after - before - overhead);
+        assertWalkAnimPoses();
+    }
+
+    /**
+     * Poses the legs of robots {@code from} up to {@code to} like walkAnim
+     * and animateLeg did before the gait table: a sine for every leg and a
+     * new rotation array for every upper and lower leg.
+     */
+    private static void walkAnim(RaceSimulation race, int from, int to, double[][][] rotations) {
+        for (int i = from; i < to; i++) {
+            double t = race.distance[i] / 8;
+            for (int leg = 0; leg < 4; leg++) {
+                double angle = 35 * Math.sin((1 / 5d) * 2 * Math.PI * (t + WALK_OFFSET[leg]));
+                rotations[i][2 * leg] = new double[]{0, angle, 0};
+                if (angle < 0) {
+                    rotations[i][2 * leg + 1] = new double[]{0, -angle, 0};
+                } else {
+                    rotations[i][2 * leg + 1] = new double[]{0, 0.5 * angle, 0};
+                }
+            }
+        }
+    }
+
+    /**
+     * Prints the best time of posing 10,000 robots with the gait table and
+     * like walkAnim did, on one thread. There is no bound on it as the test
+     * machines differ too much.
+     */
+    @Test
+    public void compareThroughput() {
+        int robots = 10000;
+        int batch = 1000; // small enough that pose runs on the calling thread
+        RaceSimulation large = new RaceSimulation(robots, 1);
+        large.move(100);
+        int[][] batches = new int[robots / batch][batch];
+        for (int i = 0; i < robots; i++) {
+            batches[i / batch][i % batch] = i;
+        }
+        double[][][] rotations = new double[robots][8][];
+
+        long table = Long.MAX_VALUE;
+        long sine = Long.MAX_VALUE;
+        for (int run = 0; run < 200; run++) {
+            long start = System.nanoTime();
+            for (int[] robotBatch : batches) {
+                large.pose(robotBatch, batch);
+            }
+            table = Math.min(table, System.nanoTime() - start);
+            start = System.nanoTime();
+            walkAnim(large, 0, robots, rotations);
+            sine = Math.min(sine, System.nanoTime() - start);
+        }
+        System.out.printf("posing %d robots: gait table %.3f ms, walkAnim %.3f ms%n", robots, table / 1e6, sine / 1e6);
+        // the table agrees with walkAnim, and uses the rotations so that they are not left out
+        for (int i = 0; i < robots; i++) {
+            assertEquals(rotations[i][0][1], large.pose[i * RaceSimulation.POSE_SIZE], 0.01);
+        }
+    }
+}
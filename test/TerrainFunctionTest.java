@@ -0,0 +1,89 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the compiled terrain functions against the same function
+ * written out in Java.
+ */
+public class TerrainFunctionTest {
+
+    /**
+     * The built-in terrain, as in terrains/hills.terrain.
+     */
+    private static final String HILLS = "0.6 * cos(0.3 * x + 0.3 * y) + 0.4 * cos(x - 0.5 * y)";
+
+    private static final int POINTS = 4096;
+
+    private final TerrainFunction compiled = new TerrainFunction(HILLS);
+    private final CosineHills written = new CosineHills();
+
+    /**
+     * Sums the heights of POINTS points along a diagonal line.
+     */
+    private static float sum(TerrainMesh.Heights heights) {
+        float sum = 0;
+        for (int i = 0; i < POINTS; i++) {
+            sum += heights.heightAt(-100 + i * 0.05f, -50 + i * 0.03f);
+        }
+        return sum;
+    }
+
+    @Test
+    public void compiledMatchesWritten() {
+        for (int i = 0; i < POINTS; i++) {
+            float x = -100 + i * 0.05f;
+            float y = -50 + i * 0.03f;
+            assertEquals(written.heightAt(x, y), compiled.heightAt(x, y), 1e-6);
+        }
+    }
+
+    @Test
+    public void argumentsKeepTheirOrder() {
+        TerrainFunction function = new TerrainFunction("x / y - (y - x) ^ 2 + max(x - 2, y * 3) * min(y, x / 4)");
+        TerrainFunction octave = new TerrainFunction("fbm(x * 2 - y, y / x, 1) - noise(x * 2 - y, y / x)");
+        for (int i = 1; i < 100; i++) {
+            float x = i * 0.37f;
+            float y = 5 - i * 0.11f;
+            double expected = (double) x / y - Math.pow(y - x, 2) + Math.max(x - 2, y * 3.0) * Math.min(y, x / 4.0);
+            assertEquals(expected, function.heightAt(x, y), 1e-5 * (1 + Math.abs(expected)));
+            assertEquals(0, octave.heightAt(x, y), 0);
+        }
+    }
+
+    @Test
+    public void reportsWhereTheExpressionIsWrong() {
+        try {
+            new TerrainFunction("0.6 * cos(x + ) + y");
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("column 15: unexpected )", e.getMessage());
+        }
+    }
+
+    /**
+     * Prints the time per point of the compiled and the written function,
+     * there is no bound on it as the test machines differ too much.
+     */
+    @Test
+    public void compareThroughput() {
+        float sink = 0;
+        for (int i = 0; i < 5000; i++) {
+            sink += sum(compiled) + sum(written);
+        }
+        int repeats = 2000;
+        long start = System.nanoTime();
+        for (int i = 0; i < repeats; i++) {
+            sink += sum(compiled);
+        }
+        long compiledTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < repeats; i++) {
+            sink += sum(written);
+        }
+        long writtenTime = System.nanoTime() - start;
+        double count = (double) repeats * POINTS;
+        System.out.printf("compiled %.1f ns, written %.1f ns per point%n", compiledTime / count, writtenTime / count);
+        // uses the sums, so that the loops are not left out
+        assertFalse(Float.isNaN(sink));
+    }
+}
@@ -0,0 +1,88 @@
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the tile cache of the terrain heights.
+ */
+public class TerrainQueryTest {
+
+    private static final float PERIOD = 40;
+    private static final float AMPLITUDE = 20;
+
+    private final CosineHills hills = new CosineHills();
+    private final TerrainQuery query = new TerrainQuery(hills, PERIOD, PERIOD, AMPLITUDE, 0, 0, 0);
+
+    /**
+     * Returns the height of the terrain function itself at ({@code x},
+     * {@code y}).
+     */
+    private double exact(double x, double y) {
+        return hills.heightAt((float) x / PERIOD, (float) y / PERIOD) * AMPLITUDE - 5;
+    }
+
+    /**
+     * Returns the centre of tile {@code i} of a long row of tiles.
+     */
+    private static double centre(int i) {
+        return (i + 0.5) * TerrainQuery.TILE_CELLS * TerrainQuery.SPACING;
+    }
+
+    @Test
+    public void evictsOneTileAtATime() {
+        for (int i = 0; i < 2 * TerrainQuery.MAX_TILES; i++) {
+            query.heightAt(centre(i), 0);
+            assertEquals(Math.min(i + 1, TerrainQuery.MAX_TILES), query.getTiles());
+        }
+        // tiles that were evicted are computed again
+        assertEquals(exact(centre(0), 0), query.heightAt(centre(0), 0), 0.1);
+    }
+
+    @Test
+    public void threadsAgree() throws InterruptedException {
+        final double[][] heights = new double[4][2 * TerrainQuery.MAX_TILES];
+        Thread[] threads = new Thread[heights.length];
+        for (int t = 0; t < threads.length; t++) {
+            final double[] mine = heights[t];
+            final int offset = t * heights[t].length / threads.length;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    // every thread starts somewhere else, and there are more tiles than the cache holds
+                    for (int i = 0; i < mine.length; i++) {
+                        int tile = (i + offset) % mine.length;
+                        mine[tile] = query.heightAt(centre(tile), centre(tile % 7) + 3.3);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        for (int i = 0; i < heights[0].length; i++) {
+            assertEquals(exact(centre(i), centre(i % 7) + 3.3), heights[0][i], 0.1);
+            for (double[] other : heights) {
+                assertEquals(heights[0][i], other[i], 0);
+            }
+        }
+    }
+
+    @Test
+    public void normalsMatchTheSlopeOfTheFunction() {
+        double[] normal = new double[3];
+        double step = 0.01;
+        for (int i = 0; i < 1000; i++) {
+            double x = -150 + i * 0.31;
+            double y = 80 - i * 0.23;
+            query.normalAt(x, y, normal, 0);
+            // central differences of the terrain function itself
+            double slopeX = (exact(x + step, y) - exact(x - step, y)) / (2 * step);
+            double slopeY = (exact(x, y + step) - exact(x, y - step)) / (2 * step);
+            double length = Math.sqrt(slopeX * slopeX + slopeY * slopeY + 1);
+            assertEquals(-slopeX / length, normal[0], 0.015);
+            assertEquals(-slopeY / length, normal[1], 0.015);
+            assertEquals(1 / length, normal[2], 0.015);
+            assertEquals(1, normal[0] * normal[0] + normal[1] * normal[1] + normal[2] * normal[2], 1e-9);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+import java.util.Random;
+import robotrace.Vector;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests of the walls of tessellated tracks and track chunks.
+ */
+public class TrackMeshTest {
+
+    private static final int PARTS = 100;
+    private static final int LANES = 4;
+
+    /**
+     * Returns a winding track of PARTS cubic trackparts, whose directions
+     * run on smoothly from one trackpart to the next, and the connecting
+     * line back to the start.
+     */
+    private static TrackDefinition generate() {
+        Random random = new Random(7);
+        int[] buildType = new int[PARTS + 1];
+        double[] packed = new double[(PARTS + 1) * Bezier.DOUBLES_PER_PART];
+        double x = 0;
+        double y = 0;
+        double heading = 0;
+        for (int j = 0; j < PARTS; j++) {
+            double length = 20 + 40 * random.nextDouble();
+            double turn = (random.nextDouble() - 0.5) * 1.5;
+            double ex = x + length * Math.cos(heading + turn);
+            double ey = y + length * Math.sin(heading + turn);
+            double[] points = {x, y, 0, ex, ey, 0,
+                x + length / 3 * Math.cos(heading), y + length / 3 * Math.sin(heading), 0,
+                ex - length / 3 * Math.cos(heading + 2 * turn), ey - length / 3 * Math.sin(heading + 2 * turn), 0};
+            buildType[j] = Bezier.CUBIC;
+            System.arraycopy(points, 0, packed, j * Bezier.DOUBLES_PER_PART, points.length);
+            x = ex;
+            y = ey;
+            heading += 2 * turn;
+        }
+        buildType[PARTS] = Bezier.LINE;
+        double[] close = {x, y, 0, 0, 0, 0};
+        System.arraycopy(close, 0, packed, PARTS * Bezier.DOUBLES_PER_PART, close.length);
+        return new TrackDefinition("generated", LANES, buildType, packed, 0);
+    }
+
+    /**
+     * Returns the number of pieces trackparts {@code from} up to {@code to}
+     * are tessellated in.
+     */
+    private static int pieces(Track track, int from, int to, int detail) {
+        int pieces = 0;
+        for (int j = from; j < to; j++) {
+            pieces += track.tessellationParameters(j, detail).length - 1;
+        }
+        return pieces;
+    }
+
+    /**
+     * Checks that both vertices of the given wall pair stand {@code offset}
+     * beside the centerline point {@code end}, the top one at its height
+     * and the bottom one 3 below it.
+     */
+    private static void assertBeside(TrackMesh mesh, int v, Vector end, double offset) {
+        float[] vertex = new float[TrackMesh.FLOATS_PER_VERTEX];
+        for (int k = 0; k < 2; k++) {
+            mesh.getVertex(v + k, vertex);
+            double dx = vertex[2] - end.x();
+            double dy = vertex[3] - end.y();
+            assertEquals(offset, Math.sqrt(dx * dx + dy * dy), 1e-3);
+            assertEquals(end.z() - 3 * k, vertex[4], 1e-3);
+        }
+    }
+
+    /**
+     * Checks that the walls of {@code mesh} end with a pair at the end of
+     * trackpart {@code last}, and that the walls of {@code next}, if any,
+     * start with a pair at the same point.
+     */
+    private static void assertWallsClose(Track track, TrackMesh mesh, TrackMesh next, int last) {
+        Vector end = track.partpoint(last, 1);
+        int wall = 0;
+        for (int r = 0; r < mesh.getRangeCount(); r++) {
+            if (mesh.getRangeSurface(r) != TrackMesh.SURFACE_BRICK) {
+                continue;
+            }
+            double offset = wall == 0 ? Track.LANE_WIDTH : Track.LANE_WIDTH * (LANES - 1);
+            assertBeside(mesh, mesh.getRangeFirst(r) + mesh.getRangeVertexCount(r) - 2, end, offset);
+            if (next != null) {
+                assertBeside(next, next.getRangeFirst(r), end, offset);
+            }
+            wall++;
+        }
+        assertEquals(2, wall);
+    }
+
+    @Test
+    public void everyChunkClosesItsWalls() {
+        Track track = new Track(generate());
+        int parts = track.definition.getPartCount();
+        for (int detail = Track.DETAIL_FULL; detail <= Track.DETAIL_COARSE; detail++) {
+            TrackMesh previous = null;
+            for (int from = 0; from < parts; from += TrackPager.CHUNK_PARTS) {
+                int to = Math.min(from + TrackPager.CHUNK_PARTS, parts);
+                TrackMesh chunk = track.buildChunk(from, to, detail);
+                for (int r = 0; r < chunk.getRangeCount(); r++) {
+                    if (chunk.getRangeSurface(r) == TrackMesh.SURFACE_BRICK) {
+                        // a pair at the start of every piece and the closing pair
+                        assertEquals(2 * pieces(track, from, to, detail) + 2, chunk.getRangeVertexCount(r));
+                    }
+                }
+                if (previous != null) {
+                    assertWallsClose(track, previous, chunk, from - 1);
+                }
+                previous = chunk;
+            }
+            assertWallsClose(track, previous, null, parts - 1);
+        }
+    }
+
+    @Test
+    public void wholeTrackClosesItsWalls() {
+        Track track = new Track(generate());
+        TrackMesh mesh = track.mesh;
+        for (int r = 0; r < mesh.getRangeCount(); r++) {
+            if (mesh.getRangeSurface(r) == TrackMesh.SURFACE_BRICK) {
+                assertEquals(2 * pieces(track, 0, PARTS + 1, Track.DETAIL_FULL) + 2, mesh.getRangeVertexCount(r));
+            }
+        }
+        assertWallsClose(track, mesh, null, PARTS);
+    }
+}
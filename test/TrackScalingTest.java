@@ -0,0 +1,101 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Builds a generated track of 10,000 cubic trackparts on pools of 1 up to N
+ * threads, where N is the number of processors but at least 4. Every build
+ * has to give exactly the same tables and vertices, and the time of every
+ * build is printed to show how building scales with the number of threads.
+ */
+public class TrackScalingTest {
+
+    private static final int PARTS = 10000;
+
+    /**
+     * Returns a winding track of PARTS cubic trackparts and the connecting
+     * line back to the start.
+     */
+    private static TrackDefinition generate() {
+        Random random = new Random(42);
+        int[] buildType = new int[PARTS + 1];
+        double[] packed = new double[(PARTS + 1) * Bezier.DOUBLES_PER_PART];
+        double x = 0;
+        double y = 0;
+        double heading = 0;
+        for (int j = 0; j < PARTS; j++) {
+            double length = 20 + 40 * random.nextDouble();
+            double turn = (random.nextDouble() - 0.5) * 1.5;
+            double ex = x + length * Math.cos(heading + turn);
+            double ey = y + length * Math.sin(heading + turn);
+            double[] points = {x, y, 0, ex, ey, 0,
+                x + length / 3 * Math.cos(heading), y + length / 3 * Math.sin(heading), 0,
+                ex - length / 3 * Math.cos(heading + 2 * turn), ey - length / 3 * Math.sin(heading + 2 * turn), 0};
+            buildType[j] = Bezier.CUBIC;
+            System.arraycopy(points, 0, packed, j * Bezier.DOUBLES_PER_PART, points.length);
+            x = ex;
+            y = ey;
+            heading += 2 * turn;
+        }
+        buildType[PARTS] = Bezier.LINE;
+        double[] close = {x, y, 0, 0, 0, 0};
+        System.arraycopy(close, 0, packed, PARTS * Bezier.DOUBLES_PER_PART, close.length);
+        return new TrackDefinition("generated", 4, buildType, packed, 0);
+    }
+
+    /**
+     * Builds the track and all of its chunks at full detail on a pool of
+     * the given number of threads, and returns them in the format of the
+     * track cache.
+     */
+    private static byte[] build(TrackDefinition definition, int threads, long[] nanos) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            long start = System.nanoTime();
+            Track track = new Track(definition, pool);
+            TrackMesh mesh = track.buildChunk(0, definition.getPartCount(), Track.DETAIL_FULL);
+            nanos[0] = System.nanoTime() - start;
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            track.write(out);
+            mesh.write(out);
+            out.close();
+            return bytes.toByteArray();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void sameResultForAnyNumberOfThreads() throws IOException {
+        TrackDefinition definition = generate();
+        int maxThreads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        long[] nanos = new long[1];
+        build(definition, maxThreads, nanos); // warm up
+        byte[] reference = null;
+        long single = 0;
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            long best = Long.MAX_VALUE;
+            for (int run = 0; run < 3; run++) {
+                byte[] result = build(definition, threads, nanos);
+                best = Math.min(best, nanos[0]);
+                if (reference == null) {
+                    reference = result;
+                } else {
+                    assertTrue("different result with " + threads + " threads", Arrays.equals(reference, result));
+                }
+            }
+            if (threads == 1) {
+                single = best;
+            }
+            System.out.printf("%d trackparts on %d threads: %d ms, speedup %.2f (%d processors)%n", PARTS, threads,
+                    best / 1000000, (double) single / best, Runtime.getRuntime().availableProcessors());
+        }
+    }
+}